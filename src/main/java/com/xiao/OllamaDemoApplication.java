@@ -3,9 +3,11 @@ package com.xiao;
 import org.mybatis.spring.annotation.MapperScan;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @MapperScan("com.xiao.mapper")
 @SpringBootApplication
+@EnableScheduling
 public class OllamaDemoApplication {
 
 	public static void main(String[] args) {
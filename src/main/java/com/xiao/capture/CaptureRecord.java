@@ -0,0 +1,78 @@
+package com.xiao.capture;
+
+import com.alibaba.fastjson.annotation.JSONField;
+import lombok.Data;
+
+/**
+ * 流量采集记录，每个请求一行
+ * 字段名使用短名称以减小采集文件体积
+ */
+@Data
+public class CaptureRecord {
+
+    /**
+     * 请求开始时间，相对采集开始的毫秒数
+     */
+    @JSONField(name = "t")
+    private long offsetMs;
+
+    /**
+     * 接口名称：ask、stream、chat、chat_stream
+     */
+    @JSONField(name = "ep")
+    private String endpoint;
+
+    /**
+     * 模型名称
+     */
+    @JSONField(name = "m")
+    private String model;
+
+    /**
+     * 生成配置名称
+     */
+    @JSONField(name = "pf")
+    private String profile;
+
+    /**
+     * 提示文本长度（字符数）
+     */
+    @JSONField(name = "pl")
+    private int promptLength;
+
+    /**
+     * 提示文本，开启脱敏时为null
+     */
+    @JSONField(name = "p")
+    private String prompt;
+
+    /**
+     * 上下文大小：generate类接口为上下文token数，chat类接口为历史消息数
+     */
+    @JSONField(name = "cx")
+    private int contextSize;
+
+    /**
+     * 结果：ok、cached、truncated、error、cancelled
+     */
+    @JSONField(name = "st")
+    private String status;
+
+    /**
+     * 首个输出片段的耗时（毫秒），非流式请求等于总耗时
+     */
+    @JSONField(name = "ttft")
+    private long ttftMs;
+
+    /**
+     * 总耗时（毫秒）
+     */
+    @JSONField(name = "dur")
+    private long durationMs;
+
+    /**
+     * 输出字符数
+     */
+    @JSONField(name = "oc")
+    private int outputChars;
+}
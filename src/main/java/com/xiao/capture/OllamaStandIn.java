@@ -0,0 +1,189 @@
+package com.xiao.capture;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+/**
+ * 本地Ollama替身，用于回放压测
+ * 模拟/api/generate和/api/chat的流式与非流式响应：首字延迟 = 基础延迟 + 提示长度 * 每字符延迟，
+ * 之后每个token间隔固定时间，token数取请求options.num_predict；客户端断开后立即停止生成
+ * <pre>
+ * 用法：java -cp &lt;classpath&gt; com.xiao.capture.OllamaStandIn [端口] [每token毫秒] [首字基础毫秒]
+ * </pre>
+ */
+public class OllamaStandIn {
+
+    private static final String TOKENS = "这是回放压测使用的模拟输出内容。";
+
+    private static final int DEFAULT_NUM_PREDICT = 128;
+
+    private final int tokenMs;
+    private final int ttftMs;
+
+    public OllamaStandIn(int tokenMs, int ttftMs) {
+        this.tokenMs = tokenMs;
+        this.ttftMs = ttftMs;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 11434;
+        int tokenMs = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int ttftMs = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        new OllamaStandIn(tokenMs, ttftMs).start(port);
+        System.out.println("Ollama替身已启动，端口: " + port + ", 每token: " + tokenMs + "ms, 首字基础延迟: " + ttftMs + "ms");
+    }
+
+    /**
+     * 启动HTTP服务
+     */
+    public HttpServer start(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/api/version", exchange -> writeJson(exchange, Map.of("version", "stand-in")));
+        server.createContext("/api/tags", exchange -> writeJson(exchange, Map.of("models", List.of())));
+        server.createContext("/api/generate", exchange -> generate(exchange, false));
+        server.createContext("/api/chat", exchange -> generate(exchange, true));
+        server.start();
+        return server;
+    }
+
+    private void generate(HttpExchange exchange, boolean chat) throws IOException {
+        JSONObject request;
+        try {
+            request = JSON.parseObject(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            exchange.sendResponseHeaders(400, -1);
+            exchange.close();
+            return;
+        }
+        String model = request.getString("model");
+        int promptLength = promptLength(request, chat);
+        boolean stream = !Boolean.FALSE.equals(request.getBoolean("stream"));
+
+        // 没有提示内容的请求只加载模型（keep-alive），/api/generate只看prompt，system不算提示内容
+        if (chat ? promptLength == 0 : isEmpty(request.getString("prompt"))) {
+            Map<String, Object> done = chunk(model, chat, "");
+            done.put("done", true);
+            done.put("done_reason", "load");
+            writeJson(exchange, done);
+            return;
+        }
+
+        int numPredict = DEFAULT_NUM_PREDICT;
+        JSONObject options = request.getJSONObject("options");
+        if (options != null && options.getInteger("num_predict") != null && options.getInteger("num_predict") > 0) {
+            numPredict = options.getInteger("num_predict");
+        }
+        long start = System.nanoTime();
+        long promptEvalMs = ttftMs + promptLength / 20;
+
+        try {
+            if (!stream) {
+                sleep(promptEvalMs + (long) numPredict * tokenMs);
+                StringBuilder text = new StringBuilder();
+                for (int i = 0; i < numPredict; i++) {
+                    text.append(TOKENS.charAt(i % TOKENS.length()));
+                }
+                writeJson(exchange, done(chunk(model, chat, text.toString()), numPredict, promptLength, start, promptEvalMs));
+                return;
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                sleep(promptEvalMs);
+                for (int i = 0; i < numPredict; i++) {
+                    writeLine(out, chunk(model, chat, String.valueOf(TOKENS.charAt(i % TOKENS.length()))));
+                    sleep(tokenMs);
+                }
+                writeLine(out, done(chunk(model, chat, ""), numPredict, promptLength, start, promptEvalMs));
+            }
+        } catch (IOException e) {
+            // 客户端已断开（例如网关取消了请求），停止生成
+            exchange.close();
+        }
+    }
+
+    private static int promptLength(JSONObject request, boolean chat) {
+        if (!chat) {
+            String prompt = request.getString("prompt");
+            String system = request.getString("system");
+            return (prompt != null ? prompt.length() : 0) + (system != null ? system.length() : 0);
+        }
+        JSONArray messages = request.getJSONArray("messages");
+        int length = 0;
+        if (messages != null) {
+            for (int i = 0; i < messages.size(); i++) {
+                String content = messages.getJSONObject(i).getString("content");
+                length += content != null ? content.length() : 0;
+            }
+        }
+        return length;
+    }
+
+    private static boolean isEmpty(String text) {
+        return text == null || text.isEmpty();
+    }
+
+    private static Map<String, Object> chunk(String model, boolean chat, String text) {
+        Map<String, Object> chunk = new LinkedHashMap<>();
+        chunk.put("model", model);
+        chunk.put("created_at", Instant.now().toString());
+        if (chat) {
+            chunk.put("message", Map.of("role", "assistant", "content", text));
+        } else {
+            chunk.put("response", text);
+        }
+        chunk.put("done", false);
+        return chunk;
+    }
+
+    private static Map<String, Object> done(Map<String, Object> chunk, int evalCount, int promptLength,
+                                            long startNanos, long promptEvalMs) {
+        chunk.put("done", true);
+        chunk.put("done_reason", "length");
+        chunk.put("context", List.of(1, 2, 3));
+        chunk.put("total_duration", System.nanoTime() - startNanos);
+        chunk.put("load_duration", 0);
+        chunk.put("prompt_eval_count", promptLength);
+        chunk.put("prompt_eval_duration", promptEvalMs * 1_000_000);
+        chunk.put("eval_count", evalCount);
+        return chunk;
+    }
+
+    private static void writeLine(OutputStream out, Map<String, Object> chunk) throws IOException {
+        out.write((JSON.toJSONString(chunk) + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static void writeJson(HttpExchange exchange, Object body) throws IOException {
+        byte[] bytes = JSON.toJSONString(body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void sleep(long ms) throws IOException {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted", e);
+        }
+    }
+}
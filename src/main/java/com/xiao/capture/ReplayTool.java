@@ -0,0 +1,296 @@
+package com.xiao.capture;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 流量回放工具
+ * 按采集文件中的时间间隔（可加速）向网关重放请求，统计吞吐量、首字耗时和总耗时分位数，
+ * 并可与另一次回放的报告对比，用于评估网关改动前后的差异。通常配合OllamaStandIn使用，
+ * 脱敏的采集记录用等长的占位文本代替提示，maxTokens按原始输出字符数设置（替身每个token一个字符）。
+ * 单个请求超过timeout（默认300秒）未完成时计为超时错误，不再等待
+ * <pre>
+ * 用法：java -cp &lt;classpath&gt; com.xiao.capture.ReplayTool &lt;采集文件&gt;
+ *          [--target http://localhost:8080] [--speed 1] [--timeout 300] [--out report.json] [--baseline base.json]
+ * </pre>
+ */
+public class ReplayTool {
+
+    private static final String FILLER = "请根据以下内容给出简要回答。";
+
+    private final String target;
+    private final double speed;
+    private final Duration timeout;
+    private final HttpClient client;
+    // 守护线程：超时后仍在读取响应的请求不阻止进程退出
+    private final ExecutorService executor = Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task, "replay");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ReplayTool(String target, double speed, Duration timeout) {
+        this.target = target;
+        this.speed = speed;
+        this.timeout = timeout;
+        this.client = HttpClient.newBuilder()
+                .executor(executor)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("用法: ReplayTool <采集文件> [--target url] [--speed N] [--timeout 秒] [--out report.json] [--baseline base.json]");
+            System.exit(1);
+        }
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            options.put(args[i], args[i + 1]);
+        }
+        ReplayTool tool = new ReplayTool(options.getOrDefault("--target", "http://localhost:8080"),
+                Double.parseDouble(options.getOrDefault("--speed", "1")),
+                Duration.ofSeconds(Long.parseLong(options.getOrDefault("--timeout", "300"))));
+        Map<String, Object> report = tool.replay(load(Paths.get(args[0])));
+        tool.executor.shutdown();
+
+        System.out.println(JSON.toJSONString(report, SerializerFeature.PrettyFormat));
+        if (options.containsKey("--out")) {
+            Files.writeString(Paths.get(options.get("--out")), JSON.toJSONString(report, SerializerFeature.PrettyFormat));
+        }
+        if (options.containsKey("--baseline")) {
+            JSONObject baseline = JSON.parseObject(Files.readString(Paths.get(options.get("--baseline"))));
+            System.out.println(JSON.toJSONString(compare(baseline, JSON.parseObject(JSON.toJSONString(report))),
+                    SerializerFeature.PrettyFormat));
+        }
+    }
+
+    /**
+     * 读取采集文件，支持gzip压缩和未压缩的NDJSON
+     */
+    public static List<CaptureRecord> load(Path file) throws IOException {
+        InputStream in = Files.newInputStream(file);
+        if (file.getFileName().toString().endsWith(".gz")) {
+            in = new GZIPInputStream(in);
+        }
+        List<CaptureRecord> records = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    records.add(JSON.parseObject(line, CaptureRecord.class));
+                }
+            }
+        }
+        return records;
+    }
+
+    /**
+     * 按原始时间间隔（除以speed）回放所有记录，等待全部完成或超时后返回报告
+     */
+    public Map<String, Object> replay(List<CaptureRecord> records) throws InterruptedException {
+        List<CompletableFuture<Result>> futures = new ArrayList<>(records.size());
+        long start = System.nanoTime();
+        for (CaptureRecord record : records) {
+            long due = start + (long) (record.getOffsetMs() / speed * 1_000_000);
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+            }
+            // 请求超时只限制等待响应头，流式响应在响应头之后停滞时由这里的总时限结束
+            futures.add(CompletableFuture.supplyAsync(() -> send(record), executor)
+                    .completeOnTimeout(new Result(false, 0, timeout.toNanos(), 0, true),
+                            timeout.toMillis(), TimeUnit.MILLISECONDS));
+        }
+        List<Result> results = futures.stream().map(CompletableFuture::join).toList();
+        return report(records, results, System.nanoTime() - start);
+    }
+
+    /**
+     * 发送单个请求并计时
+     */
+    private Result send(CaptureRecord record) {
+        String path = switch (record.getEndpoint()) {
+            case "ask" -> "/api/ollama/ask";
+            case "chat" -> "/api/ollama/chat";
+            case "chat_stream" -> "/api/ollama/chat/stream";
+            default -> "/api/ollama/stream";
+        };
+        boolean stream = path.endsWith("/stream");
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("text", record.getPrompt() != null ? record.getPrompt() : placeholder(record.getPromptLength()));
+        body.put("model", record.getModel());
+        body.put("profile", record.getProfile());
+        if (record.getOutputChars() > 0) {
+            body.put("maxTokens", record.getOutputChars());
+        }
+        HttpRequest request = HttpRequest.newBuilder(URI.create(target + path))
+                .header("Content-Type", "application/json")
+                .timeout(timeout)
+                .POST(HttpRequest.BodyPublishers.ofString(JSON.toJSONString(body), StandardCharsets.UTF_8))
+                .build();
+
+        long start = System.nanoTime();
+        try {
+            if (!stream) {
+                HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+                long elapsed = System.nanoTime() - start;
+                JSONObject json = response.statusCode() == 200 ? JSON.parseObject(response.body()) : null;
+                boolean ok = json != null && json.getBooleanValue("success");
+                String answer = json != null ? json.getString("response") : null;
+                return new Result(ok, elapsed, elapsed, answer != null ? answer.length() : 0, false);
+            }
+
+            HttpResponse<Stream<String>> response = client.send(request, HttpResponse.BodyHandlers.ofLines());
+            if (response.statusCode() != 200) {
+                response.body().close();
+                return new Result(false, 0, System.nanoTime() - start, 0, false);
+            }
+            long firstOutput = 0;
+            int outputEvents = 0;
+            boolean ok = true;
+            try (Stream<String> lines = response.body()) {
+                Iterator<String> iterator = lines.iterator();
+                while (iterator.hasNext()) {
+                    String line = iterator.next();
+                    if (line.equals("event:character") || line.equals("event:token")) {
+                        if (firstOutput == 0) {
+                            firstOutput = System.nanoTime();
+                        }
+                        outputEvents++;
+                    } else if (line.equals("event:error")) {
+                        ok = false;
+                    }
+                }
+            }
+            long end = System.nanoTime();
+            return new Result(ok, (firstOutput != 0 ? firstOutput : end) - start, end - start, outputEvents, false);
+        } catch (HttpTimeoutException e) {
+            return new Result(false, 0, System.nanoTime() - start, 0, true);
+        } catch (IOException e) {
+            return new Result(false, 0, System.nanoTime() - start, 0, false);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Result(false, 0, System.nanoTime() - start, 0, false);
+        }
+    }
+
+    private static String placeholder(int length) {
+        StringBuilder text = new StringBuilder(length);
+        while (text.length() < length) {
+            text.append(FILLER);
+        }
+        text.setLength(length);
+        return text.toString();
+    }
+
+    /**
+     * 汇总回放结果，同时给出采集时的原始分位数作为参照
+     */
+    static Map<String, Object> report(List<CaptureRecord> records, List<Result> results, long wallNanos) {
+        long[] ttft = results.stream().filter(Result::ok).mapToLong(r -> r.ttftNanos() / 1_000_000).sorted().toArray();
+        long[] latency = results.stream().filter(Result::ok).mapToLong(r -> r.durationNanos() / 1_000_000).sorted().toArray();
+        long errors = results.stream().filter(r -> !r.ok()).count();
+        long timeouts = results.stream().filter(Result::timedOut).count();
+        long outputChars = results.stream().mapToLong(Result::outputChars).sum();
+        double wallSeconds = wallNanos / 1e9;
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("requests", results.size());
+        report.put("errors", errors);
+        report.put("timeouts", timeouts);
+        report.put("error_rate", results.isEmpty() ? 0 : (double) errors / results.size());
+        report.put("wall_seconds", wallSeconds);
+        report.put("throughput_rps", results.size() / wallSeconds);
+        report.put("output_chars_per_second", outputChars / wallSeconds);
+        report.put("ttft_ms", percentiles(ttft));
+        report.put("latency_ms", percentiles(latency));
+        report.put("captured_ttft_ms", percentiles(records.stream()
+                .filter(r -> "ok".equals(r.getStatus())).mapToLong(CaptureRecord::getTtftMs).sorted().toArray()));
+        report.put("captured_latency_ms", percentiles(records.stream()
+                .filter(r -> "ok".equals(r.getStatus())).mapToLong(CaptureRecord::getDurationMs).sorted().toArray()));
+        return report;
+    }
+
+    /**
+     * 对比两次回放报告，给出吞吐量、错误率及各分位数的变化
+     */
+    static Map<String, Object> compare(JSONObject baseline, JSONObject current) {
+        Map<String, Object> diff = new LinkedHashMap<>();
+        for (String key : List.of("throughput_rps", "output_chars_per_second", "error_rate")) {
+            diff.put(key, delta(baseline.getDoubleValue(key), current.getDoubleValue(key)));
+        }
+        for (String key : List.of("ttft_ms", "latency_ms")) {
+            JSONObject before = baseline.getJSONObject(key);
+            JSONObject after = current.getJSONObject(key);
+            Map<String, Object> items = new LinkedHashMap<>();
+            for (String p : List.of("p50", "p90", "p99")) {
+                items.put(p, delta(before != null ? before.getDoubleValue(p) : 0, after != null ? after.getDoubleValue(p) : 0));
+            }
+            diff.put(key, items);
+        }
+        return diff;
+    }
+
+    private static Map<String, Object> delta(double before, double after) {
+        Map<String, Object> item = new LinkedHashMap<>();
+        item.put("baseline", before);
+        item.put("current", after);
+        item.put("change_percent", before == 0 ? null : (after - before) / before * 100);
+        return item;
+    }
+
+    private static Map<String, Object> percentiles(long[] sorted) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("p50", percentile(sorted, 50));
+        result.put("p90", percentile(sorted, 90));
+        result.put("p99", percentile(sorted, 99));
+        result.put("max", sorted.length == 0 ? 0 : sorted[sorted.length - 1]);
+        return result;
+    }
+
+    /**
+     * 最近秩法计算分位数，sorted需已升序排列
+     */
+    static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(p / 100 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+    }
+
+    /**
+     * 单个请求的回放结果，超时的请求同时计为错误
+     */
+    record Result(boolean ok, long ttftNanos, long durationNanos, long outputChars, boolean timedOut) {
+    }
+}
@@ -0,0 +1,105 @@
+package com.xiao.cluster;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * 一致性哈希环
+ * 每个节点在环上放置virtualNodes个虚拟节点，键归属于顺时针方向的第一个虚拟节点。
+ * 节点加入或离开时只有约1/N的键改变归属。实例不可变，成员变化时重新创建
+ */
+public final class ConsistentHashRing {
+
+    private final List<String> nodes;
+
+    // 按哈希值排序的虚拟节点位置及其所属节点
+    private final long[] points;
+    private final String[] owners;
+
+    /**
+     * @param nodes 节点列表，重复的节点只计一次，与顺序无关
+     * @param virtualNodes 每个节点的虚拟节点数
+     */
+    public ConsistentHashRing(Iterable<String> nodes, int virtualNodes) {
+        if (virtualNodes <= 0) {
+            throw new IllegalArgumentException("virtualNodes必须大于0");
+        }
+        TreeSet<String> distinct = new TreeSet<>();
+        nodes.forEach(distinct::add);
+        this.nodes = Collections.unmodifiableList(new ArrayList<>(distinct));
+
+        int size = distinct.size() * virtualNodes;
+        long[] hashes = new long[size];
+        String[] names = new String[size];
+        int i = 0;
+        for (String node : distinct) {
+            for (int v = 0; v < virtualNodes; v++) {
+                hashes[i] = hash(node + "#" + v);
+                names[i] = node;
+                i++;
+            }
+        }
+        // 按哈希值排序，哈希相同时按节点名排序，保证各节点构建出相同的环
+        Integer[] order = new Integer[size];
+        for (int k = 0; k < size; k++) {
+            order[k] = k;
+        }
+        Arrays.sort(order, (a, b) -> {
+            int c = Long.compare(hashes[a], hashes[b]);
+            return c != 0 ? c : names[a].compareTo(names[b]);
+        });
+        this.points = new long[size];
+        this.owners = new String[size];
+        for (int k = 0; k < size; k++) {
+            points[k] = hashes[order[k]];
+            owners[k] = names[order[k]];
+        }
+    }
+
+    /**
+     * 查找键的归属节点
+     *
+     * @return 节点，环为空时返回null
+     */
+    public String owner(String key) {
+        if (points.length == 0) {
+            return null;
+        }
+        int index = Arrays.binarySearch(points, hash(key));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    /**
+     * 环上的节点，按名称排序
+     */
+    public List<String> nodes() {
+        return nodes;
+    }
+
+    public boolean isEmpty() {
+        return nodes.isEmpty();
+    }
+
+    /**
+     * 64位哈希：FNV-1a后再做一次混合，使相近的字符串（例如同一节点的虚拟节点）在环上分散
+     */
+    static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
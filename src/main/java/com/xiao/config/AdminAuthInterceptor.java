@@ -0,0 +1,46 @@
+package com.xiao.config;
+
+import jakarta.annotation.Resource;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * 管理令牌拦截器
+ * 需要权限的管理接口（在WebMvcConfig中登记）必须通过X-Admin-Token请求头携带ollama.admin.token，
+ * 未配置令牌时一律返回403
+ */
+@Slf4j
+@Component
+public class AdminAuthInterceptor implements HandlerInterceptor {
+
+    public static final String TOKEN_HEADER = "X-Admin-Token";
+
+    @Resource
+    private OllamaProperties ollamaProperties;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        String expected = ollamaProperties.getAdmin().getToken();
+        String token = request.getHeader(TOKEN_HEADER);
+        if (expected != null && !expected.isEmpty() && token != null
+                && MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8))) {
+            return true;
+        }
+        log.warn("拒绝没有正确管理令牌的请求: {} {}, 来源: {}", request.getMethod(), request.getRequestURI(), request.getRemoteAddr());
+        response.setStatus(HttpStatus.FORBIDDEN.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.getWriter().write(expected == null || expected.isEmpty()
+                ? "{\"success\":false,\"message\":\"未配置管理令牌，该接口已禁用\"}"
+                : "{\"success\":false,\"message\":\"管理令牌错误\"}");
+        return false;
+    }
+}
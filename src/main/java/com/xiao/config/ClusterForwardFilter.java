@@ -0,0 +1,194 @@
+package com.xiao.config;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.xiao.service.ClusterService;
+import jakarta.annotation.Resource;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+/**
+ * 集群转发过滤器
+ * 按会话ID（请求体中的conversationId或/chat/{conversationId}路径）或亲和请求头确定归属节点，
+ * 归属其他节点的请求转发过去，其余请求在本节点处理。已被转发过的请求和管理接口不再转发；
+ * 外部请求中的X-Cluster-Forwarded、X-Cluster-Secret请求头在进入控制器前被移除，只有携带正确集群密钥的请求才视为转发请求
+ */
+@Component
+public class ClusterForwardFilter extends OncePerRequestFilter {
+
+    private static final String API_PREFIX = "/api/ollama/";
+    private static final String ADMIN_PREFIX = "/api/ollama/admin/";
+    private static final String CHAT_PATH = "/api/ollama/chat";
+    private static final String CHAT_STREAM_PATH = "/api/ollama/chat/stream";
+
+    @Resource
+    private ClusterService clusterService;
+
+    @Resource
+    private OllamaProperties ollamaProperties;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith(API_PREFIX) || clusterService.isForwarded(request);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if ((request.getHeader(ClusterService.FORWARDED_HEADER) != null || request.getHeader(ClusterService.SECRET_HEADER) != null)
+                && !clusterService.isValidSecret(request.getHeader(ClusterService.SECRET_HEADER))) {
+            request = new ClusterHeadersRemovedRequest(request);
+        }
+        String path = request.getRequestURI();
+        if (!clusterService.isEnabled() || path.startsWith(ADMIN_PREFIX)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        byte[] body = null;
+        String key = null;
+        if ("POST".equals(request.getMethod()) && (CHAT_PATH.equals(path) || CHAT_STREAM_PATH.equals(path))) {
+            // 会话ID在请求体中，读取后缓存，本节点处理时重新提供给控制器
+            body = request.getInputStream().readAllBytes();
+            key = conversationId(body);
+        } else if (path.startsWith(CHAT_PATH + "/") && !CHAT_STREAM_PATH.equals(path)) {
+            key = path.substring(CHAT_PATH.length() + 1);
+        }
+        if (key == null) {
+            key = request.getHeader(ollamaProperties.getCluster().getAffinityHeader());
+        }
+
+        String owner = key != null && !key.isEmpty() ? clusterService.ownerOf(key) : null;
+        if (owner != null && !owner.equals(clusterService.self())) {
+            if (body == null && !"GET".equals(request.getMethod())) {
+                body = request.getInputStream().readAllBytes();
+            }
+            if (clusterService.forward(owner, request, body, response)) {
+                return;
+            }
+        }
+        chain.doFilter(body != null ? new CachedBodyRequest(request, body) : request, response);
+    }
+
+    /**
+     * 读取请求体中的会话ID，新会话没有ID时返回null，由处理请求的节点创建归属自己的ID
+     */
+    private String conversationId(byte[] body) {
+        try {
+            JSONObject json = JSON.parseObject(new String(body, StandardCharsets.UTF_8));
+            return json != null ? json.getString("conversationId") : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * 移除了集群请求头的外部请求
+     */
+    private static class ClusterHeadersRemovedRequest extends HttpServletRequestWrapper {
+
+        ClusterHeadersRemovedRequest(HttpServletRequest request) {
+            super(request);
+        }
+
+        private static boolean isClusterHeader(String name) {
+            return ClusterService.FORWARDED_HEADER.equalsIgnoreCase(name)
+                    || ClusterService.SECRET_HEADER.equalsIgnoreCase(name);
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return isClusterHeader(name) ? null : super.getHeader(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+            return isClusterHeader(name) ? Collections.emptyEnumeration() : super.getHeaders(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaderNames() {
+            List<String> names = new ArrayList<>();
+            for (String name : Collections.list(super.getHeaderNames())) {
+                if (!isClusterHeader(name)) {
+                    names.add(name);
+                }
+            }
+            return Collections.enumeration(names);
+        }
+    }
+
+    /**
+     * 请求体已被读取的请求
+     */
+    private static class CachedBodyRequest extends HttpServletRequestWrapper {
+        private final byte[] body;
+
+        CachedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream in = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() {
+                    return in.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener listener) {
+                    throw new UnsupportedOperationException("缓存的请求体不支持异步IO");
+                }
+
+                @Override
+                public int read() {
+                    return in.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    return in.read(b, off, len);
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            return new BufferedReader(new InputStreamReader(getInputStream(), StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public int getContentLength() {
+            return body.length;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return body.length;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.xiao.config;
+
+import com.xiao.service.DrainService;
+import jakarta.annotation.Resource;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 排空拦截器
+ * 排空状态下拒绝/api/ollama下除管理接口（含健康检查）以外的所有请求，不区分请求方法
+ * （GET方式的/stream同样会发起生成），返回503让负载均衡器重试到其他节点。管理接口在WebMvcConfig中排除
+ */
+@Component
+public class DrainInterceptor implements HandlerInterceptor {
+
+    @Resource
+    private DrainService drainService;
+
+    @Resource
+    private OllamaProperties ollamaProperties;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        if (!drainService.isDraining()) {
+            return true;
+        }
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader("Retry-After", String.valueOf(Math.max(1, ollamaProperties.getDrain().getReconnectDelayMs() / 1000)));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.getWriter().write("{\"success\":false,\"message\":\"服务正在下线，请重试\"}");
+        return false;
+    }
+}
@@ -0,0 +1,515 @@
+package com.xiao.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ollama相关配置
+ * 对应application.yml中的ollama前缀
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "ollama")
+public class OllamaProperties {
+
+    /**
+     * Ollama后端地址列表，例如：http://localhost:11434
+     */
+    private List<String> backends = new ArrayList<>(List.of("http://localhost:11434"));
+
+    /**
+     * 后端健康检查间隔（毫秒）
+     */
+    private long healthCheckIntervalMs = 10000;
+
+    /**
+     * 请求中携带的keep_alive时长，例如："10m"、"1h"
+     */
+    private String keepAlive = "10m";
+
+    /**
+     * 模型预热配置
+     */
+    private Warmup warmup = new Warmup();
+
+    /**
+     * 批量生成配置
+     */
+    private Batch batch = new Batch();
+
+    /**
+     * 对话（/api/chat）配置
+     */
+    private Chat chat = new Chat();
+
+    /**
+     * 语义缓存配置
+     */
+    private SemanticCache semanticCache = new SemanticCache();
+
+    /**
+     * 下线排空配置
+     */
+    private Drain drain = new Drain();
+
+    /**
+     * 转录日志配置
+     */
+    private Journal journal = new Journal();
+
+    /**
+     * 请求未指定生成配置时使用的配置名称
+     */
+    private String defaultProfile = "fast";
+
+    /**
+     * 命名的生成配置，键为配置名称，例如：fast、precise、batch
+     */
+    private Map<String, GenerationProfile> profiles = new LinkedHashMap<>();
+
+    /**
+     * 系统提示前缀预热配置
+     */
+    private PromptPrefix promptPrefix = new PromptPrefix();
+
+    /**
+     * 流量采集配置
+     */
+    private Capture capture = new Capture();
+
+    /**
+     * 集群配置
+     */
+    private Cluster cluster = new Cluster();
+
+    /**
+     * token用量计量配置
+     */
+    private Usage usage = new Usage();
+
+    /**
+     * JFR记录配置
+     */
+    private Jfr jfr = new Jfr();
+
+    /**
+     * 管理接口配置
+     */
+    private Admin admin = new Admin();
+
+    /**
+     * 模型预热配置内部类
+     */
+    @Data
+    public static class Warmup {
+        /**
+         * 启动时及后端加入时需要预加载的模型，这些模型不会被主动驱逐
+         */
+        private List<String> preloadModels = new ArrayList<>();
+
+        /**
+         * keep-alive心跳间隔（毫秒）
+         */
+        private long pingIntervalMs = 60000;
+
+        /**
+         * 模型空闲超过该时长（毫秒）后主动驱逐
+         */
+        private long evictAfterMs = 1800000;
+
+        /**
+         * load_duration超过该阈值（毫秒）视为一次冷启动
+         */
+        private long coldThresholdMs = 500;
+
+        /**
+         * 按模型覆盖keep-alive时长，键为请求中的模型名称，没有配置的模型使用ollama.keep-alive。
+         * 模型名称含冒号，在yml中需写成"[deepseek-r1:8b]": 30m
+         */
+        private Map<String, String> modelKeepAlive = new LinkedHashMap<>();
+    }
+
+    /**
+     * 批量生成配置内部类
+     */
+    @Data
+    public static class Batch {
+        /**
+         * 每个可用后端允许的并发请求数，总并发 = 该值 * 可用后端数
+         */
+        private int concurrencyPerBackend = 2;
+
+        /**
+         * 批量任务结果文件目录
+         */
+        private String dir = System.getProperty("java.io.tmpdir") + "/ollama-batch";
+
+        /**
+         * 任务结果保留时长（毫秒），超时后清理任务及结果文件
+         */
+        private long jobTtlMs = 86400000;
+
+        /**
+         * 批量响应流超时时间（毫秒）
+         */
+        private long timeoutMs = 3600000;
+
+        /**
+         * 批量条目使用的生成配置名称
+         */
+        private String profile = "batch";
+    }
+
+    /**
+     * 对话配置内部类
+     */
+    @Data
+    public static class Chat {
+        /**
+         * 单个会话保留的最大消息数（不含system消息），超过后一次性裁剪到trimTo条
+         * 裁剪会改变消息前缀，导致Ollama的提示缓存失效一次，因此不逐条裁剪
+         */
+        private int maxMessages = 64;
+
+        /**
+         * 裁剪后保留的消息数
+         */
+        private int trimTo = 32;
+
+        /**
+         * 会话空闲超过该时长（毫秒）后清理
+         */
+        private long conversationTtlMs = 3600000;
+
+        /**
+         * 最多保留的会话数
+         */
+        private int maxConversations = 10000;
+    }
+
+    /**
+     * 语义缓存配置内部类
+     */
+    @Data
+    public static class SemanticCache {
+        /**
+         * 是否启用语义缓存
+         */
+        private boolean enabled = false;
+
+        /**
+         * 向量化实现：ollama（调用Ollama /api/embed）或hashing（本地哈希向量，用于测试）
+         */
+        private String embeddingProvider = "ollama";
+
+        /**
+         * Ollama向量模型名称
+         */
+        private String embeddingModel = "nomic-embed-text";
+
+        /**
+         * hashing向量维度
+         */
+        private int hashingDimensions = 256;
+
+        /**
+         * 余弦相似度阈值，不低于该值才视为命中
+         */
+        private float similarityThreshold = 0.92f;
+
+        /**
+         * 每个模型最多缓存的条目数，超过后按CLOCK算法淘汰
+         */
+        private int capacityPerModel = 4096;
+    }
+
+    /**
+     * 下线排空配置内部类
+     */
+    @Data
+    public static class Drain {
+        /**
+         * 排空等待上限（毫秒），超时后仍未结束的流会收到重连提示并被关闭
+         */
+        private long timeoutMs = 30000;
+
+        /**
+         * 建议客户端重连前等待的时间（毫秒）
+         */
+        private long reconnectDelayMs = 1000;
+    }
+
+    /**
+     * 转录日志配置内部类
+     */
+    @Data
+    public static class Journal {
+        /**
+         * 是否记录请求、token及响应的转录日志
+         */
+        private boolean enabled = false;
+
+        /**
+         * 段文件目录
+         */
+        private String dir = "journal";
+
+        /**
+         * 单个段文件大小（MB）
+         */
+        private int segmentSizeMb = 64;
+
+        /**
+         * 段文件最长使用时间（毫秒），超过后滚动到新文件
+         */
+        private long rollIntervalMs = 3600000;
+    }
+
+    /**
+     * 生成配置内部类
+     * 设置生成参数的默认值及单次请求的成本上限
+     */
+    @Data
+    public static class GenerationProfile {
+        /**
+         * 温度参数
+         */
+        private Float temperature;
+
+        /**
+         * top_p采样参数
+         */
+        private Float topP;
+
+        /**
+         * top_k采样参数
+         */
+        private Integer topK;
+
+        /**
+         * 重复惩罚
+         */
+        private Float repeatPenalty;
+
+        /**
+         * 默认最大生成token数，推理模型（如deepseek-r1）的<think>推理块也计入其中，通常占用数百到上千token
+         */
+        private int numPredict = 512;
+
+        /**
+         * 最大生成token数上限，客户端指定的maxTokens不能超过该值
+         */
+        private int maxNumPredict = 1024;
+
+        /**
+         * 上下文窗口大小（num_ctx），超出部分由Ollama截断
+         */
+        private int numCtx = 4096;
+
+        /**
+         * 单次请求最长耗时（毫秒），超时后取消生成，0表示不限制
+         */
+        private long maxWallTimeMs = 60000;
+    }
+
+    /**
+     * 系统提示前缀预热配置内部类
+     */
+    @Data
+    public static class PromptPrefix {
+        /**
+         * 命名的系统提示模板，键为模板名称
+         */
+        private Map<String, SystemPrompt> templates = new LinkedHashMap<>();
+
+        /**
+         * 需要预热系统提示前缀的模型，为空时使用warmup.preload-models
+         */
+        private List<String> models = new ArrayList<>();
+
+        /**
+         * 检查模型及模板是否变化的间隔（毫秒），变化后重新预热
+         */
+        private long refreshIntervalMs = 300000;
+    }
+
+    /**
+     * 系统提示模板内部类
+     */
+    @Data
+    public static class SystemPrompt {
+        /**
+         * 系统提示文本
+         */
+        private String system;
+    }
+
+    /**
+     * 流量采集配置内部类
+     */
+    @Data
+    public static class Capture {
+        /**
+         * 是否在启动时开启流量采集，也可以通过管理接口随时开启或停止
+         */
+        private boolean enabled = false;
+
+        /**
+         * 采集文件目录
+         */
+        private String dir = System.getProperty("java.io.tmpdir") + "/ollama-capture";
+
+        /**
+         * 是否脱敏，开启后只记录提示文本长度，不记录原文
+         */
+        private boolean redact = true;
+    }
+
+    /**
+     * 集群配置内部类
+     */
+    @Data
+    public static class Cluster {
+        /**
+         * 是否启用集群模式，启用后按会话ID或亲和键把请求转发到归属节点
+         */
+        private boolean enabled = false;
+
+        /**
+         * 本节点地址，需与peers中的写法一致，为空时使用http://localhost:${server.port}
+         */
+        private String self;
+
+        /**
+         * 所有节点地址（包括本节点），例如：http://localhost:8080
+         */
+        private List<String> peers = new ArrayList<>();
+
+        /**
+         * 每个节点在哈希环上的虚拟节点数
+         */
+        private int virtualNodes = 160;
+
+        /**
+         * 节点健康检查间隔（毫秒）
+         */
+        private long healthCheckIntervalMs = 3000;
+
+        /**
+         * 没有会话ID时用作亲和键的请求头，例如用户ID
+         */
+        private String affinityHeader = "X-Affinity-Key";
+
+        /**
+         * 每个节点的转发连接池大小
+         */
+        private int maxConnectionsPerPeer = 64;
+
+        /**
+         * 转发连接超时（毫秒），超时后视为节点不可用并在本节点处理
+         */
+        private int connectTimeoutMs = 1000;
+
+        /**
+         * 转发读超时（毫秒），需覆盖流式响应中最长的无输出间隔
+         */
+        private int readTimeoutMs = 300000;
+
+        /**
+         * 节点间共享密钥，转发和状态移交请求通过X-Cluster-Secret请求头携带，
+         * 没有携带正确密钥的X-Cluster-Forwarded请求头视为外部伪造并被移除。启用集群模式时必须配置
+         */
+        private String secret;
+    }
+
+    /**
+     * token用量计量配置内部类
+     */
+    @Data
+    public static class Usage {
+        /**
+         * 是否开启用量计量，开启前需在数据库中执行db/token_usage.sql
+         */
+        private boolean enabled = false;
+
+        /**
+         * 标识用户的请求头，没有该请求头的请求计入anonymous。
+         * 网关直接取用该请求头，必须由完成认证的前置代理设置，并在入口处丢弃客户端自带的同名请求头，
+         * 否则客户端可以冒充其他用户计量和查询用量
+         */
+        private String userHeader = "X-User-Id";
+
+        /**
+         * 内存增量写入数据库的间隔（毫秒），进程崩溃时最多丢失这段时间内的用量
+         */
+        private long flushIntervalMs = 10000;
+
+        /**
+         * 每条写入语句的最大行数
+         */
+        private int batchSize = 500;
+
+        /**
+         * 待写入批次文件目录，写入数据库前先落盘，数据库不可用或进程崩溃后据此重试
+         */
+        private String dir = System.getProperty("java.io.tmpdir") + "/ollama-usage";
+
+        /**
+         * 查询用量的统计周期：day或month
+         */
+        private String period = "month";
+
+        /**
+         * 已写入批次登记的保留天数
+         */
+        private int batchRetentionDays = 30;
+    }
+
+    /**
+     * JFR记录配置内部类
+     */
+    @Data
+    public static class Jfr {
+        /**
+         * 是否在启动时开始记录，也可以通过管理接口随时开始或停止
+         */
+        private boolean enabled = false;
+
+        /**
+         * JFR预置配置：default或profile
+         */
+        private String settings = "default";
+
+        /**
+         * 记录最长保留时间（秒），更早的数据被丢弃
+         */
+        private long maxAgeSeconds = 600;
+
+        /**
+         * 记录最大大小（MB）
+         */
+        private long maxSizeMb = 100;
+
+        /**
+         * 导出文件目录
+         */
+        private String dir = System.getProperty("java.io.tmpdir") + "/ollama-jfr";
+    }
+
+    /**
+     * 管理接口配置内部类
+     */
+    @Data
+    public static class Admin {
+        /**
+         * 管理令牌，需要权限的管理接口通过X-Admin-Token请求头携带；为空时这些接口一律拒绝
+         */
+        private String token;
+    }
+}
@@ -0,0 +1,36 @@
+package com.xiao.config;
+
+import com.xiao.jfr.RequestIds;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * 请求ID过滤器
+ * 使用请求头X-Request-Id中的ID，没有时生成一个，设置到处理请求的线程上供JFR事件关联，
+ * 并通过响应头返回给客户端。排在集群转发之前，转发的请求也带有响应头
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class RequestIdFilter extends OncePerRequestFilter {
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String requestId = RequestIds.resolve(request.getHeader(RequestIds.HEADER));
+        response.setHeader(RequestIds.HEADER, requestId);
+        RequestIds.set(requestId);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            RequestIds.clear();
+        }
+    }
+}
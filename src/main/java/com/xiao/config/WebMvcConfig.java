@@ -0,0 +1,28 @@
+package com.xiao.config;
+
+import jakarta.annotation.Resource;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class WebMvcConfig implements WebMvcConfigurer {
+
+    @Resource
+    private DrainInterceptor drainInterceptor;
+
+    @Resource
+    private AdminAuthInterceptor adminAuthInterceptor;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(drainInterceptor)
+                .addPathPatterns("/api/ollama/**")
+                .excludePathPatterns("/api/ollama/admin/**");
+        registry.addInterceptor(adminAuthInterceptor)
+                .addPathPatterns("/api/ollama/admin/drain", "/api/ollama/admin/undrain",
+                        "/api/ollama/admin/capture", "/api/ollama/admin/capture/**",
+                        "/api/ollama/admin/usage",
+                        "/api/ollama/admin/jfr", "/api/ollama/admin/jfr/**");
+    }
+}
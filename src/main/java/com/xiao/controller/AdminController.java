@@ -0,0 +1,238 @@
+package com.xiao.controller;
+
+import com.alibaba.fastjson.JSONObject;
+import com.xiao.service.ClusterService;
+import com.xiao.service.ConversationService;
+import com.xiao.service.DrainService;
+import com.xiao.service.FlightRecordingService;
+import com.xiao.service.TokenUsageService;
+import com.xiao.service.TrafficCaptureService;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 运维管理控制器
+ * 排空、流量采集、用量查询及JFR接口需要在X-Admin-Token请求头中携带管理令牌，见AdminAuthInterceptor
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/ollama/admin")
+public class AdminController {
+
+    @Resource
+    private DrainService drainService;
+
+    @Resource
+    private TrafficCaptureService trafficCaptureService;
+
+    @Resource
+    private ClusterService clusterService;
+
+    @Resource
+    private ConversationService conversationService;
+
+    @Resource
+    private FlightRecordingService flightRecordingService;
+
+    @Resource
+    private TokenUsageService tokenUsageService;
+
+    /**
+     * 健康检查，排空状态下返回503，供负载均衡器摘除节点
+     */
+    @GetMapping("/health")
+    public ResponseEntity<Map<String, Object>> health() {
+        Map<String, Object> result = new HashMap<>(drainService.status());
+        result.put("success", !drainService.isDraining());
+        HttpStatus status = drainService.isDraining() ? HttpStatus.SERVICE_UNAVAILABLE : HttpStatus.OK;
+        return ResponseEntity.status(status).body(result);
+    }
+
+    /**
+     * 提前进入排空状态（例如在滚动发布的preStop钩子中调用），立即返回，排空在后台进行
+     */
+    @PostMapping("/drain")
+    public Map<String, Object> drain() {
+        log.info("收到排空请求");
+        CompletableFuture.runAsync(drainService::drain);
+        Map<String, Object> result = new HashMap<>(drainService.status());
+        result.put("success", true);
+        return result;
+    }
+
+    /**
+     * 撤销排空，节点重新接收请求并重新加入集群
+     */
+    @PostMapping("/undrain")
+    public Map<String, Object> undrain() {
+        log.info("收到撤销排空请求");
+        boolean undrained = drainService.undrain();
+        Map<String, Object> result = new HashMap<>(drainService.status());
+        result.put("success", true);
+        result.put("undrained", undrained);
+        return result;
+    }
+
+    /**
+     * 查询排空状态
+     */
+    @GetMapping("/drain")
+    public Map<String, Object> drainStatus() {
+        Map<String, Object> result = new HashMap<>(drainService.status());
+        result.put("success", true);
+        return result;
+    }
+
+    /**
+     * 开始流量采集，已在采集时返回当前采集文件
+     */
+    @PostMapping("/capture/start")
+    public Map<String, Object> startCapture() {
+        boolean started = trafficCaptureService.start() != null;
+        Map<String, Object> result = new HashMap<>(trafficCaptureService.status());
+        result.put("success", started);
+        return result;
+    }
+
+    /**
+     * 停止流量采集，返回的文件可用ReplayTool回放
+     */
+    @PostMapping("/capture/stop")
+    public Map<String, Object> stopCapture() {
+        trafficCaptureService.stop();
+        Map<String, Object> result = new HashMap<>(trafficCaptureService.status());
+        result.put("success", true);
+        return result;
+    }
+
+    /**
+     * 查询流量采集状态
+     */
+    @GetMapping("/capture")
+    public Map<String, Object> captureStatus() {
+        Map<String, Object> result = new HashMap<>(trafficCaptureService.status());
+        result.put("success", true);
+        return result;
+    }
+
+    /**
+     * 集群状态，其他节点也通过该接口检查本节点是否可用，排空中的节点视为已离开
+     */
+    @GetMapping("/cluster")
+    public Map<String, Object> clusterStatus() {
+        Map<String, Object> result = new HashMap<>(clusterService.status());
+        result.put("draining", drainService.isDraining());
+        result.put("success", true);
+        return result;
+    }
+
+    /**
+     * 接收其他节点移交的会话，请求必须携带集群密钥
+     */
+    @PostMapping("/cluster/conversations")
+    public ResponseEntity<Map<String, Object>> importConversation(
+            @RequestHeader(value = ClusterService.SECRET_HEADER, required = false) String secret,
+            @RequestBody JSONObject snapshot) {
+        Map<String, Object> result = new HashMap<>();
+        if (!clusterService.isValidSecret(secret)) {
+            log.warn("拒绝没有正确集群密钥的会话移交请求");
+            result.put("success", false);
+            result.put("message", "集群密钥错误");
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(result);
+        }
+        result.put("success", true);
+        result.put("imported", conversationService.importConversation(snapshot));
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * 查询指定用户本周期的token用量，按模型分列，需要管理令牌
+     *
+     * @param user 用户
+     * @param model 模型，为空时查询全部模型
+     */
+    @GetMapping("/usage")
+    public Map<String, Object> usage(@RequestParam String user, @RequestParam(required = false) String model) {
+        Map<String, Object> result = new HashMap<>();
+        if (!tokenUsageService.isEnabled()) {
+            result.put("success", false);
+            result.put("message", "用量计量未开启");
+            return result;
+        }
+        try {
+            result.putAll(tokenUsageService.usage(user, model));
+        } catch (RuntimeException e) {
+            log.error("查询用量失败: {}", e.getMessage());
+            result.put("success", false);
+            result.put("message", "查询用量失败: " + e.getMessage());
+            return result;
+        }
+        result.put("success", true);
+        return result;
+    }
+
+    /**
+     * 开始JFR记录，已在记录时直接返回当前状态
+     *
+     * @param settings JFR预置配置：default或profile，为空时使用配置文件中的设置
+     */
+    @PostMapping("/jfr/start")
+    public Map<String, Object> startRecording(@RequestParam(required = false) String settings) {
+        Map<String, Object> result = new HashMap<>();
+        try {
+            result.put("success", flightRecordingService.start(settings));
+        } catch (IllegalArgumentException e) {
+            result.put("success", false);
+            result.put("message", e.getMessage());
+        }
+        result.putAll(flightRecordingService.status());
+        return result;
+    }
+
+    /**
+     * 导出当前JFR记录并下载，记录继续进行；未在记录时返回404
+     */
+    @PostMapping("/jfr/dump")
+    public ResponseEntity<FileSystemResource> dumpRecording() {
+        Path file = flightRecordingService.dump();
+        if (file == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + file.getFileName() + "\"")
+                .body(new FileSystemResource(file));
+    }
+
+    /**
+     * 停止并丢弃JFR记录
+     */
+    @PostMapping("/jfr/stop")
+    public Map<String, Object> stopRecording() {
+        flightRecordingService.stop();
+        Map<String, Object> result = new HashMap<>(flightRecordingService.status());
+        result.put("success", true);
+        return result;
+    }
+
+    /**
+     * 查询JFR记录状态
+     */
+    @GetMapping("/jfr")
+    public Map<String, Object> recordingStatus() {
+        Map<String, Object> result = new HashMap<>(flightRecordingService.status());
+        result.put("success", true);
+        return result;
+    }
+}
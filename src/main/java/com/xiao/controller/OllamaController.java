@@ -1,21 +1,63 @@
 package com.xiao.controller;
 
 import com.alibaba.fastjson.JSON;
+import com.xiao.config.OllamaProperties;
+import com.xiao.dto.BatchItemDTO;
+import com.xiao.dto.BatchRequestDTO;
+import com.xiao.dto.ChatMessageDTO;
 import com.xiao.dto.ChatRequestDTO;
+import com.xiao.dto.CompareRequestDTO;
+import com.xiao.dto.OllamaChatRequestDTO;
+import com.xiao.dto.OllamaChatResponseDTO;
 import com.xiao.dto.OllamaRequestDTO;
 import com.xiao.dto.OllamaResponseDTO;
+import com.xiao.jfr.GenerationTrace;
+import com.xiao.jfr.SseWriteEvent;
+import com.xiao.service.BatchJobService;
+import com.xiao.service.ConversationService;
+import com.xiao.service.DrainService;
+import com.xiao.service.GenerationProfileService;
+import com.xiao.service.ModelWarmupService;
+import com.xiao.service.OllamaBackendRegistry;
+import com.xiao.service.PromptPrefixService;
+import com.xiao.service.SemanticCacheService;
+import com.xiao.service.TokenUsageService;
+import com.xiao.service.TrafficCaptureService;
+import com.xiao.service.TranscriptJournalService;
+import com.xiao.utils.ContextCodec;
 import com.xiao.utils.HttpUtil;
 import com.xiao.utils.OllamaStreamUtil;
+import com.xiao.utils.StopRuleMatcher;
+import com.xiao.utils.ThinkTagSplitter;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import jakarta.annotation.Resource;
+import jakarta.servlet.http.HttpServletRequest;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 /**
  * Ollama大模型API控制器
@@ -31,8 +73,48 @@ public class OllamaController {
     @Resource
     private OllamaStreamUtil ollamaStreamUtil;
     
-    // 存储所有活跃的SSE连接
-    private final ConcurrentHashMap<String, SseEmitter> emitters = new ConcurrentHashMap<>();
+    @Resource
+    private OllamaBackendRegistry backendRegistry;
+    
+    @Resource
+    private ModelWarmupService modelWarmupService;
+    
+    @Resource
+    private BatchJobService batchJobService;
+    
+    @Resource
+    private OllamaProperties ollamaProperties;
+    
+    @Resource
+    private ConversationService conversationService;
+    
+    @Resource
+    private SemanticCacheService semanticCacheService;
+    
+    // 管理所有进行中的SSE连接，下线时用于排空
+    @Resource
+    private DrainService drainService;
+    
+    @Resource
+    private TranscriptJournalService transcriptJournalService;
+    
+    @Resource
+    private GenerationProfileService generationProfileService;
+    
+    @Resource
+    private PromptPrefixService promptPrefixService;
+    
+    @Resource
+    private TrafficCaptureService trafficCaptureService;
+    
+    @Resource
+    private TokenUsageService tokenUsageService;
+    
+    // NDJSON响应类型，显式指定UTF-8避免中文乱码
+    private static final MediaType NDJSON_UTF8 = new MediaType("application", "x-ndjson", StandardCharsets.UTF_8);
+    
+    // 多模型对比时每生成多少个token上报一次速度
+    private static final int COMPARE_STATS_EVERY = 10;
     
     /**
      * 普通请求大模型API (POST方式)
@@ -42,32 +124,112 @@ public class OllamaController {
      */
     @PostMapping("/ask")
     public Map<String, Object> ask(@RequestBody ChatRequestDTO request) {
+        // 登记进行中的请求，下线排空时等待其完成
+        drainService.beginAsk();
+        try {
+            return doAsk(request);
+        } finally {
+            drainService.endAsk();
+        }
+    }
+    
+    private Map<String, Object> doAsk(ChatRequestDTO request) {
 
-        log.info("收到普通请求，模型: {}, 内容: {}, 上下文大小: {}", 
+        // 解析上下文（支持JSON数组和紧凑编码两种格式）、生成配置及系统提示
+        List<Integer> context;
+        String system;
+        GenerationProfileService.Applied profile;
+        try {
+            context = resolveContext(request);
+            profile = generationProfileService.apply(request.getProfile(), request.getMaxTokens());
+            // 新对话通过system字段发送系统提示，相同的前缀在后端复用KV缓存
+            system = isEmpty(context) && request.getSystemPrompt() != null
+                    ? promptPrefixService.systemText(request.getSystemPrompt()) : null;
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", false);
+            result.put("message", e.getMessage());
+            return result;
+        }
+        
+        // 完整提示文本只写入转录日志，业务日志仅记录长度
+        int contextSize = context != null ? context.size() : 0;
+        log.info("收到普通请求，模型: {}, 内容长度: {}, 上下文大小: {}", 
                 request.getModel(), 
-                request.getText(), 
-                request.getContext() != null ? request.getContext().size() : 0);
+                request.getText() != null ? request.getText().length() : 0, 
+                contextSize);
+        long journalId = transcriptJournalService.begin("ask", request.getModel(), request.getText(), contextSize);
+        TrafficCaptureService.Capture capture = trafficCaptureService.begin(
+                "ask", request.getModel(), request.getText(), contextSize, profile.name());
+        GenerationTrace trace = GenerationTrace.begin("ask", request.getModel());
+        
+        // 不带上下文和系统提示的请求先查询语义缓存
+        SemanticCacheService.Lookup lookup = isEmpty(context) && system == null
+                ? semanticCacheService.lookup(request.getModel(), profile.variant(), request.getText())
+                : null;
+        if (lookup != null && lookup.hit() != null) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", true);
+            result.put("model", request.getModel());
+            result.put("response", lookup.hit().answer());
+            result.put("done", true);
+            // 返回缓存的上下文，客户端可以继续对话
+            if (ContextCodec.FORMAT_COMPACT.equals(request.getContextFormat())) {
+                result.put("compact_context", ContextCodec.encode(lookup.hit().context()));
+            } else {
+                result.put("context", lookup.hit().context());
+            }
+            result.put("cached", true);
+            result.put("similarity", lookup.similarity());
+            transcriptJournalService.complete(journalId, result);
+            capture.output(lookup.hit().answer().length());
+            capture.finish("cached");
+            trace.output(lookup.hit().answer().length());
+            trace.finish("cached");
+            return result;
+        }
         
         // Ollama API地址
-        String url = "http://localhost:11434/api/generate";
+        String url = backendRegistry.pick() + "/api/generate";
+        
+        // 记录模型访问，用于keep-alive调度
+        modelWarmupService.touch(request.getModel());
         
         // 构建请求DTO
         OllamaRequestDTO ollamaRequest = OllamaRequestDTO.builder()
                 .model(request.getModel())
                 .prompt(request.getText())
-                .context(request.getContext())  // 传递上下文
+                .context(context)  // 传递上下文
+                .system(system)
                 .stream(false)
+                .options(profile.options())
+                .keep_alive(modelWarmupService.keepAliveFor(request.getModel()))
                 .build();
         
         // 设置请求头
         Map<String, String> headers = new HashMap<>();
         headers.put("Content-Type", "application/json");
         
-        // 发送POST请求
-        String responseJson = httpUtil.doPost(url, headers, JSON.toJSONString(ollamaRequest));
-        
-        // 解析响应
-        OllamaResponseDTO response = JSON.parseObject(responseJson, OllamaResponseDTO.class);
+        // 发送POST请求并解析响应，等待时间不超过生成配置的耗时上限
+        OllamaResponseDTO response;
+        try {
+            String responseJson = httpUtil.doPost(url, headers, JSON.toJSONString(ollamaRequest), profile.timeoutMs());
+            response = JSON.parseObject(responseJson, OllamaResponseDTO.class);
+        } catch (RuntimeException e) {
+            boolean timedOut = e.getCause() instanceof SocketTimeoutException;
+            if (timedOut) {
+                generationProfileService.recordWallTimeExceeded(profile);
+            }
+            transcriptJournalService.error(journalId, e.getMessage());
+            capture.finish(timedOut ? "truncated" : "error");
+            trace.finish(timedOut ? "truncated" : "error");
+            throw e;
+        }
+        modelWarmupService.recordLoadDuration(request.getModel(), response.getLoad_duration());
+        tokenUsageService.record(tokenUsageService.currentUser(), request.getModel(),
+                response.getPrompt_eval_count(), response.getEval_count());
+        semanticCacheService.put(lookup, request.getText(), response.getResponse(),
+                response.getContext(), response.getTotal_duration() != null ? response.getTotal_duration() : 0L);
         
         // 构建返回结果
         Map<String, Object> result = new HashMap<>();
@@ -76,7 +238,20 @@ public class OllamaController {
         result.put("response", response.getResponse());
         result.put("done", response.getDone());
         result.put("total_duration", response.getTotal_duration());
-        result.put("context", response.getContext());  // 返回上下文给前端
+        result.put("load_duration", response.getLoad_duration());
+        // 返回上下文给前端，按协商的格式编码
+        if (ContextCodec.FORMAT_COMPACT.equals(request.getContextFormat())) {
+            result.put("compact_context", ContextCodec.encode(response.getContext()));
+        } else {
+            result.put("context", response.getContext());
+        }
+        result.put("cached", false);
+        result.put("profile", profile.name());
+        transcriptJournalService.complete(journalId, result);
+        capture.output(response.getResponse() != null ? response.getResponse().length() : 0);
+        capture.finish("ok");
+        trace.output(response.getResponse() != null ? response.getResponse().length() : 0);
+        trace.finish("ok");
         
         return result;
     }
@@ -91,52 +266,204 @@ public class OllamaController {
     @PostMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     public SseEmitter streamAsk(@RequestBody ChatRequestDTO request) {
         
-        log.info("收到流式请求，模型: {}, 内容: {}, 上下文大小: {}", 
-                request.getModel(), 
-                request.getText(), 
-                request.getContext() != null ? request.getContext().size() : 0);
-        
         // 创建SSE发射器，设置超时时间为5分钟
         SseEmitter emitter = new SseEmitter(300000L);
-        String emitterId = String.valueOf(System.currentTimeMillis());
-        emitters.put(emitterId, emitter);
         
-        // 设置完成、超时和错误回调，以便清理资源
-        emitter.onCompletion(() -> emitters.remove(emitterId));
-        emitter.onTimeout(() -> emitters.remove(emitterId));
-        emitter.onError(e -> emitters.remove(emitterId));
+        // 解析上下文（支持JSON数组和紧凑编码两种格式）、生成配置及系统提示
+        List<Integer> context;
+        String system;
+        GenerationProfileService.Applied profile;
+        StopRuleMatcher stopRules;
+        ThinkTagSplitter splitter;
+        try {
+            context = resolveContext(request);
+            profile = generationProfileService.apply(request.getProfile(), request.getMaxTokens());
+            stopRules = StopRuleMatcher.of(request.getStopRules());
+            splitter = ThinkTagSplitter.forMode(request.getReasoning());
+            // 新对话通过system字段发送系统提示，相同的前缀在后端复用KV缓存
+            system = isEmpty(context) && request.getSystemPrompt() != null
+                    ? promptPrefixService.systemText(request.getSystemPrompt()) : null;
+        } catch (IllegalArgumentException e) {
+            sendEvent(emitter, "error", Map.of("message", e.getMessage()));
+            emitter.complete();
+            return emitter;
+        }
+        boolean compact = ContextCodec.FORMAT_COMPACT.equals(request.getContextFormat());
+        
+        // 完整提示文本只写入转录日志，业务日志仅记录长度
+        int contextSize = context != null ? context.size() : 0;
+        log.info("收到流式请求，模型: {}, 内容长度: {}, 上下文大小: {}", 
+                request.getModel(), 
+                request.getText() != null ? request.getText().length() : 0, 
+                contextSize);
+        long journalId = transcriptJournalService.begin("stream", request.getModel(), request.getText(), contextSize);
+        TrafficCaptureService.Capture capture = trafficCaptureService.begin(
+                "stream", request.getModel(), request.getText(), contextSize, profile.name());
+        GenerationTrace trace = GenerationTrace.begin("stream", request.getModel());
+        
+        DrainService.ActiveStream activeStream = drainService.openStream(emitter);
+        
+        // 正常结束、出错、超过耗时上限和连接断开只处理先发生的一个
+        AtomicBoolean finished = new AtomicBoolean();
+        // 上游已生成的片段数（含推理块），没有完成片段时作为输出token数计量
+        String user = tokenUsageService.currentUser();
+        AtomicLong upstreamTokens = new AtomicLong();
+        // 上游订阅和耗时上限定时器在后面创建，清理先于创建发生时，创建后立即取消
+        Disposable.Swap upstream = Disposables.swap();
+        Disposable.Swap wallTimer = Disposables.swap();
+        
+        // 设置完成、超时和错误回调，以便清理资源；此前未正常结束的请求记为被取消，并取消上游生成
+        Runnable cleanup = () -> {
+            wallTimer.dispose();
+            drainService.closeStream(activeStream);
+            capture.finish("cancelled");
+            trace.finish("cancelled");
+            if (finished.compareAndSet(false, true)) {
+                upstream.dispose();
+                if (upstreamTokens.get() > 0) {
+                    tokenUsageService.record(user, request.getModel(), null, upstreamTokens.get());
+                }
+            }
+        };
+        emitter.onCompletion(cleanup);
+        emitter.onTimeout(cleanup);
+        emitter.onError(e -> cleanup.run());
+        
+        // 不带上下文、系统提示和停止规则的请求先查询语义缓存，命中时直接按字符发送缓存的回答
+        SemanticCacheService.Lookup lookup = isEmpty(context) && system == null && stopRules == null
+                ? semanticCacheService.lookup(request.getModel(), profile.variant(), request.getText())
+                : null;
+        if (lookup != null && lookup.hit() != null) {
+            try {
+                // 缓存的是完整输出，按请求的推理输出方式拆分
+                String answer = routeReasoning(emitter, lookup.hit().answer(), splitter, request.getReasoning());
+                for (int i = 0; i < answer.length(); i++) {
+                    SseWriteEvent write = trace.sseBegin();
+                    emitter.send(SseEmitter.event()
+                            .name("character")
+                            .data(String.valueOf(answer.charAt(i))));
+                    trace.sseEnd(write, "character");
+                }
+                sendReasoningSummary(emitter, splitter, request.getReasoning());
+                // 发送缓存的上下文，客户端可以继续对话
+                List<Integer> cachedContext = lookup.hit().context();
+                emitter.send(SseEmitter.event()
+                        .name("context")
+                        .data(compact ? ContextCodec.encode(cachedContext) : JSON.toJSONString(cachedContext)));
+                emitter.send(SseEmitter.event()
+                        .name("done")
+                        .data("true"));
+                transcriptJournalService.complete(journalId, Map.of("response", answer, "cached", true));
+                capture.output(answer.length());
+                capture.finish("cached");
+                trace.output(answer.length());
+                trace.finish("cached");
+                emitter.complete();
+            } catch (IOException e) {
+                log.error("发送缓存回答失败: {}", e.getMessage());
+                emitter.completeWithError(e);
+            }
+            return emitter;
+        }
+        
+        // 记录模型访问，用于keep-alive调度
+        modelWarmupService.touch(request.getModel());
+        
+        // 构建请求DTO
+        OllamaRequestDTO ollamaRequest = OllamaRequestDTO.builder()
+                .model(request.getModel())
+                .prompt(request.getText())
+                .context(context)  // 传递上下文
+                .system(system)
+                .stream(true)
+                .options(profile.options())
+                .keep_alive(modelWarmupService.keepAliveFor(request.getModel()))
+                .build();
+        
+        // 收集完整回答，完成后写入语义缓存；拆分推理块时收集不到完整输出，不写入缓存
+        boolean cacheAnswer = lookup != null && splitter == null;
+        StringBuilder answer = new StringBuilder();
+        long startNanos = System.nanoTime();
         
         // 使用字符级别流式响应
-        ollamaStreamUtil.streamRequestCharByChar(
-                request.getModel(),
-                request.getText(),
-                request.getContext(),  // 传递上下文
+        upstream.update(ollamaStreamUtil.streamRequestCharByChar(
+                ollamaRequest,
+                splitter,
+                // event方式下推理内容按片段发送，不拆分为字符
+                ThinkTagSplitter.MODE_EVENT.equals(request.getReasoning())
+                        ? reasoning -> sendEvent(emitter, "reasoning", reasoning)
+                        : null,
+                stopRules,
+                // 每个响应片段写入转录日志并计入采集
+                chunk -> {
+                    transcriptJournalService.token(journalId, chunk);
+                    capture.output(chunk.length());
+                    trace.output(chunk.length());
+                },
                 // 处理每个字符
                 character -> {
+                    if (cacheAnswer) {
+                        answer.append(character.charValue());
+                    }
                     try {
                         // 发送单个字符作为SSE事件
+                        SseWriteEvent write = trace.sseBegin();
                         emitter.send(SseEmitter.event()
                                 .name("character")
                                 .data(character.toString()));
+                        trace.sseEnd(write, "character");
                     } catch (IOException e) {
                         log.error("发送SSE事件失败: {}", e.getMessage());
                         emitter.completeWithError(e);
                     }
                 },
-                // 完成回调，发送上下文
-                (context) -> {
+                // 完成回调，计量用量并发送上下文
+                done -> {
+                    if (!finished.compareAndSet(false, true)) {
+                        return;
+                    }
+                    wallTimer.dispose();
+                    tokenUsageService.record(user, request.getModel(), done.getPrompt_eval_count(), done.getEval_count());
+                    List<Integer> newContext = done.getContext();
+                    long elapsedNanos = System.nanoTime() - startNanos;
+                    String stopReason = stopRules != null ? stopRules.reason() : null;
+                    if (cacheAnswer) {
+                        semanticCacheService.put(lookup, request.getText(),
+                                answer.toString(), newContext, elapsedNanos);
+                    }
+                    Map<String, Object> summary = new LinkedHashMap<>();
+                    summary.put("elapsed_nanos", elapsedNanos);
+                    summary.put("context_size", newContext != null ? newContext.size() : 0);
+                    if (stopReason != null) {
+                        summary.put("stop_reason", stopReason);
+                    }
+                    if (splitter != null) {
+                        summary.put("reasoning_chars", splitter.reasoningChars());
+                    }
+                    transcriptJournalService.complete(journalId, summary);
+                    capture.finish(stopReason != null ? "stopped" : "ok");
                     try {
-                        // 发送上下文事件
-                        if (context != null) {
+                        // 停止规则命中时生成被提前取消，没有新的上下文
+                        if (stopReason != null) {
+                            emitter.send(SseEmitter.event()
+                                    .name("stopped")
+                                    .data(JSON.toJSONString(Map.of("reason", stopReason))));
+                        }
+                        
+                        sendReasoningSummary(emitter, splitter, request.getReasoning());
+                        
+                        // 发送上下文事件，按协商的格式编码
+                        if (newContext != null) {
                             emitter.send(SseEmitter.event()
                                     .name("context")
-                                    .data(JSON.toJSONString(context)));
+                                    .data(compact ? ContextCodec.encode(newContext) : JSON.toJSONString(newContext)));
                         }
                         
                         // 发送完成事件
                         emitter.send(SseEmitter.event()
                                 .name("done")
                                 .data("true"));
+                        trace.finish(stopReason != null ? "stopped" : "ok");
                         emitter.complete();
                     } catch (IOException e) {
                         log.error("发送完成事件失败: {}", e.getMessage());
@@ -145,15 +472,781 @@ public class OllamaController {
                 },
                 // 错误回调
                 error -> {
+                    if (!finished.compareAndSet(false, true)) {
+                        return;
+                    }
+                    wallTimer.dispose();
                     log.error("流式请求发生错误: {}", error.getMessage());
+                    if (upstreamTokens.get() > 0) {
+                        tokenUsageService.record(user, request.getModel(), null, upstreamTokens.get());
+                    }
+                    transcriptJournalService.error(journalId, error.getMessage());
+                    capture.finish("error");
+                    trace.finish("error");
                     emitter.completeWithError(error);
                 },
+                upstreamTokens,
                 0  // 不设置字符间延迟，让前端控制显示速度
+        ));
+        activeStream.setUpstream(upstream);
+        
+        // 超过生成配置的耗时上限时取消上游生成，已输出的内容保留
+        wallTimer.update(generationProfileService.limitWallTime(profile, () -> {
+            if (!finished.compareAndSet(false, true)) {
+                return;
+            }
+            upstream.dispose();
+            tokenUsageService.record(user, request.getModel(), null, upstreamTokens.get());
+            transcriptJournalService.error(journalId, "超过耗时上限: " + profile.maxWallTimeMs() + "ms");
+            capture.finish("truncated");
+            sendEvent(emitter, "truncated", Map.of("reason", "max_wall_time", "profile", profile.name()));
+            sendEvent(emitter, "done", "true");
+            trace.finish("truncated");
+            emitter.complete();
+        }));
+        
+        return emitter;
+    }
+    
+    /**
+     * 多轮对话 (POST方式)
+     * 基于Ollama /api/chat，消息历史保存在服务端，只需传入conversationId和本轮文本，
+     * 同一会话可以切换模型
+     * 
+     * @param request 聊天请求DTO，包含conversationId、text和model参数
+     * @return 大模型的回复及会话ID
+     */
+    @PostMapping("/chat")
+    public Map<String, Object> chat(@RequestBody ChatRequestDTO request) {
+        
+        log.info("收到对话请求，模型: {}, 会话: {}", request.getModel(), request.getConversationId());
+        
+        Map<String, Object> result = new HashMap<>();
+        GenerationProfileService.Applied profile;
+        String system;
+        try {
+            profile = generationProfileService.apply(request.getProfile(), request.getMaxTokens());
+            system = request.getSystemPrompt() != null ? promptPrefixService.systemText(request.getSystemPrompt()) : null;
+        } catch (IllegalArgumentException e) {
+            result.put("success", false);
+            result.put("message", e.getMessage());
+            return result;
+        }
+        ConversationService.Conversation conversation = conversationService.open(request.getConversationId());
+        if (system != null) {
+            // 新会话以system消息开头，Ollama会缓存这一固定前缀
+            conversationService.applySystemPrompt(conversation, system);
+        }
+        List<ChatMessageDTO> messages;
+        try {
+            messages = conversationService.beginTurn(conversation, request.getModel(), request.getText());
+        } catch (IllegalStateException e) {
+            result.put("success", false);
+            result.put("message", e.getMessage());
+            return result;
+        }
+        TrafficCaptureService.Capture capture = trafficCaptureService.begin(
+                "chat", request.getModel(), request.getText(), messages.size() - 1, profile.name());
+        
+        modelWarmupService.touch(request.getModel());
+        OllamaChatRequestDTO chatRequest = OllamaChatRequestDTO.builder()
+                .model(request.getModel())
+                .messages(messages)
+                .stream(false)
+                .options(profile.options())
+                .keep_alive(modelWarmupService.keepAliveFor(request.getModel()))
+                .build();
+        
+        // 设置请求头
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Content-Type", "application/json");
+        
+        OllamaChatResponseDTO response;
+        try {
+            String responseJson = httpUtil.doPost(conversationService.backendFor(conversation) + "/api/chat",
+                    headers, JSON.toJSONString(chatRequest), profile.timeoutMs());
+            response = JSON.parseObject(responseJson, OllamaChatResponseDTO.class);
+            // 空响应同样撤回本轮，否则会话一直处于进行中
+            if (response == null) {
+                throw new IllegalStateException("Ollama返回空响应");
+            }
+        } catch (RuntimeException e) {
+            boolean timedOut = e.getCause() instanceof SocketTimeoutException;
+            if (timedOut) {
+                generationProfileService.recordWallTimeExceeded(profile);
+            }
+            conversationService.abortTurn(conversation);
+            capture.finish(timedOut ? "truncated" : "error");
+            throw e;
+        }
+        modelWarmupService.recordLoadDuration(request.getModel(), response.getLoad_duration());
+        tokenUsageService.record(tokenUsageService.currentUser(), request.getModel(),
+                response.getPrompt_eval_count(), response.getEval_count());
+        
+        String answer = response.getMessage() != null ? response.getMessage().getContent() : null;
+        conversationService.completeTurn(conversation, answer, response);
+        capture.output(answer != null ? answer.length() : 0);
+        capture.finish("ok");
+        
+        result.put("success", true);
+        result.put("conversation_id", conversation.getId());
+        result.put("model", response.getModel());
+        result.put("response", answer);
+        result.put("done", response.getDone());
+        result.put("total_duration", response.getTotal_duration());
+        result.put("prompt_eval_count", response.getPrompt_eval_count());
+        result.put("prompt_eval_duration", response.getPrompt_eval_duration());
+        result.put("profile", profile.name());
+        return result;
+    }
+    
+    /**
+     * 多轮对话流式请求 (POST方式)
+     * 
+     * @param request 聊天请求DTO，包含conversationId、text和model参数
+     * @return SSE事件流：conversation、token、stats、done
+     */
+    @PostMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter chatStream(@RequestBody ChatRequestDTO request) {
+        
+        log.info("收到流式对话请求，模型: {}, 会话: {}", request.getModel(), request.getConversationId());
+        
+        SseEmitter emitter = new SseEmitter(300000L);
+        GenerationProfileService.Applied profile;
+        String system;
+        try {
+            profile = generationProfileService.apply(request.getProfile(), request.getMaxTokens());
+            system = request.getSystemPrompt() != null ? promptPrefixService.systemText(request.getSystemPrompt()) : null;
+        } catch (IllegalArgumentException e) {
+            sendEvent(emitter, "error", Map.of("message", e.getMessage()));
+            emitter.complete();
+            return emitter;
+        }
+        ConversationService.Conversation conversation = conversationService.open(request.getConversationId());
+        if (system != null) {
+            // 新会话以system消息开头，Ollama会缓存这一固定前缀
+            conversationService.applySystemPrompt(conversation, system);
+        }
+        List<ChatMessageDTO> messages;
+        try {
+            messages = conversationService.beginTurn(conversation, request.getModel(), request.getText());
+        } catch (IllegalStateException e) {
+            sendEvent(emitter, "error", Map.of("message", e.getMessage()));
+            emitter.complete();
+            return emitter;
+        }
+        TrafficCaptureService.Capture capture = trafficCaptureService.begin(
+                "chat_stream", request.getModel(), request.getText(), messages.size() - 1, profile.name());
+        
+        DrainService.ActiveStream activeStream = drainService.openStream(emitter);
+        
+        modelWarmupService.touch(request.getModel());
+        OllamaChatRequestDTO chatRequest = OllamaChatRequestDTO.builder()
+                .model(request.getModel())
+                .messages(messages)
+                .stream(true)
+                .options(profile.options())
+                .keep_alive(modelWarmupService.keepAliveFor(request.getModel()))
+                .build();
+        
+        sendEvent(emitter, "conversation", Map.of("conversation_id", conversation.getId()));
+        
+        StringBuilder answer = new StringBuilder();
+        AtomicBoolean finished = new AtomicBoolean();
+        String user = tokenUsageService.currentUser();
+        AtomicLong tokens = new AtomicLong();
+        Disposable subscription = ollamaStreamUtil.streamChat(
+                chatRequest,
+                conversationService.backendFor(conversation),
+                // 处理每个token
+                token -> {
+                    tokens.incrementAndGet();
+                    answer.append(token);
+                    capture.output(token.length());
+                    sendEvent(emitter, "token", token);
+                },
+                // 完成回调，保存助手回复
+                done -> {
+                    if (!finished.compareAndSet(false, true)) {
+                        return;
+                    }
+                    conversationService.completeTurn(conversation, answer.toString(), done);
+                    capture.finish("ok");
+                    // 上游没有返回完成片段时以收到的token数计量
+                    if (done != null) {
+                        tokenUsageService.record(user, request.getModel(), done.getPrompt_eval_count(), done.getEval_count());
+                    } else {
+                        tokenUsageService.record(user, request.getModel(), null, tokens.get());
+                    }
+                    if (done != null) {
+                        Map<String, Object> stats = new LinkedHashMap<>();
+                        stats.put("prompt_eval_count", done.getPrompt_eval_count());
+                        stats.put("prompt_eval_duration", done.getPrompt_eval_duration());
+                        stats.put("eval_count", done.getEval_count());
+                        stats.put("total_duration", done.getTotal_duration());
+                        sendEvent(emitter, "stats", stats);
+                    }
+                    sendEvent(emitter, "done", "true");
+                    emitter.complete();
+                },
+                // 错误回调，撤回本轮用户消息
+                error -> {
+                    log.error("流式对话发生错误: {}", error.getMessage());
+                    if (finished.compareAndSet(false, true)) {
+                        conversationService.abortTurn(conversation);
+                        capture.finish("error");
+                        if (tokens.get() > 0) {
+                            tokenUsageService.record(user, request.getModel(), null, tokens.get());
+                        }
+                    }
+                    emitter.completeWithError(error);
+                }
         );
         
+        // 客户端提前断开时取消上游生成，并撤回本轮用户消息
+        activeStream.setUpstream(subscription);
+        
+        // 超过生成配置的耗时上限时取消上游生成，已输出的部分作为本轮回复保存
+        Disposable wallTimer = generationProfileService.limitWallTime(profile, () -> {
+            if (!finished.compareAndSet(false, true)) {
+                return;
+            }
+            subscription.dispose();
+            conversationService.completeTurn(conversation, answer.toString(), null);
+            tokenUsageService.record(user, request.getModel(), null, tokens.get());
+            capture.finish("truncated");
+            sendEvent(emitter, "truncated", Map.of("reason", "max_wall_time", "profile", profile.name()));
+            sendEvent(emitter, "done", "true");
+            emitter.complete();
+        });
+        
+        Runnable cleanup = () -> {
+            wallTimer.dispose();
+            drainService.closeStream(activeStream);
+            if (finished.compareAndSet(false, true)) {
+                subscription.dispose();
+                conversationService.abortTurn(conversation);
+                capture.finish("cancelled");
+                if (tokens.get() > 0) {
+                    tokenUsageService.record(user, request.getModel(), null, tokens.get());
+                }
+            }
+        };
+        emitter.onCompletion(cleanup);
+        emitter.onTimeout(cleanup);
+        emitter.onError(e -> cleanup.run());
+        
+        return emitter;
+    }
+    
+    /**
+     * 查询会话历史
+     */
+    @GetMapping("/chat/{conversationId}")
+    public Map<String, Object> chatHistory(@PathVariable String conversationId) {
+        ConversationService.Conversation conversation = conversationService.get(conversationId);
+        Map<String, Object> result = new HashMap<>();
+        if (conversation == null) {
+            result.put("success", false);
+            result.put("message", "会话不存在: " + conversationId);
+            return result;
+        }
+        result.putAll(conversation.snapshot());
+        result.put("success", true);
+        return result;
+    }
+    
+    /**
+     * 删除会话
+     */
+    @DeleteMapping("/chat/{conversationId}")
+    public Map<String, Object> deleteChat(@PathVariable String conversationId) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", conversationService.remove(conversationId));
+        return result;
+    }
+    
+    /**
+     * 多模型对比 (POST方式)
+     * 同一个提示同时发送给多个模型，各模型的token流合并为一个SSE流，事件数据中以model区分，
+     * 并实时上报各模型的首token耗时(TTFT)和生成速度。所有模型使用同一生成配置，超过耗时上限的模型被取消，
+     * 其model_done事件带truncated字段
+     * 
+     * @param request 对比请求DTO，包含text、models及生成配置参数
+     * @return SSE事件流：ttft、token、stats、model_done、model_error，全部模型结束后发送done
+     */
+    @PostMapping(value = "/compare", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter compare(@RequestBody CompareRequestDTO request) {
+        List<String> models = request.getModels() != null
+                ? request.getModels().stream().distinct().toList()
+                : List.of();
+        
+        log.info("收到对比请求，模型: {}, 内容长度: {}, 生成配置: {}", models,
+                request.getText() != null ? request.getText().length() : 0, request.getProfile());
+        
+        SseEmitter emitter = new SseEmitter(300000L);
+        if (models.isEmpty()) {
+            sendEvent(emitter, "error", Map.of("message", "models不能为空"));
+            emitter.complete();
+            return emitter;
+        }
+        GenerationProfileService.Applied profile;
+        try {
+            profile = generationProfileService.apply(request.getProfile(), request.getMaxTokens());
+        } catch (IllegalArgumentException e) {
+            sendEvent(emitter, "error", Map.of("message", e.getMessage()));
+            emitter.complete();
+            return emitter;
+        }
+        
+        // 连接结束时取消所有仍在生成的上游请求，并按已生成的token数计量这些模型
+        List<Disposable> subscriptions = new CopyOnWriteArrayList<>();
+        List<Runnable> partialMeters = new CopyOnWriteArrayList<>();
+        DrainService.ActiveStream activeStream = drainService.openStream(emitter);
+        activeStream.setUpstream(() -> subscriptions.forEach(Disposable::dispose));
+        Runnable cleanup = () -> {
+            drainService.closeStream(activeStream);
+            subscriptions.forEach(Disposable::dispose);
+            partialMeters.forEach(Runnable::run);
+        };
+        emitter.onCompletion(cleanup);
+        emitter.onTimeout(cleanup);
+        emitter.onError(e -> cleanup.run());
+        
+        // 所有模型使用同一个起点计时，保证TTFT可比
+        long startNanos = System.nanoTime();
+        String user = tokenUsageService.currentUser();
+        Map<String, Object> summary = new ConcurrentHashMap<>();
+        AtomicInteger remaining = new AtomicInteger(models.size());
+        
+        for (String model : models) {
+            modelWarmupService.touch(model);
+            OllamaRequestDTO ollamaRequest = OllamaRequestDTO.builder()
+                    .model(model)
+                    .prompt(request.getText())
+                    .stream(true)
+                    .options(profile.options())
+                    .keep_alive(modelWarmupService.keepAliveFor(model))
+                    .build();
+            
+            AtomicLong tokens = new AtomicLong();
+            AtomicLong firstTokenNanos = new AtomicLong();
+            // 完成、出错、超过耗时上限和连接结束只处理先发生的一个
+            AtomicBoolean ended = new AtomicBoolean();
+            Disposable.Swap wallTimer = Disposables.swap();
+            subscriptions.add(wallTimer);
+            partialMeters.add(() -> {
+                if (ended.compareAndSet(false, true) && tokens.get() > 0) {
+                    tokenUsageService.record(user, model, null, tokens.get());
+                }
+            });
+            
+            Runnable finishOne = () -> {
+                if (remaining.decrementAndGet() == 0) {
+                    sendEvent(emitter, "done", summary);
+                    emitter.complete();
+                }
+            };
+            
+            Disposable subscription = ollamaStreamUtil.streamTokens(
+                    ollamaRequest,
+                    // 处理每个token
+                    token -> {
+                        long now = System.nanoTime();
+                        long count = tokens.incrementAndGet();
+                        if (firstTokenNanos.compareAndSet(0, now)) {
+                            sendEvent(emitter, "ttft", Map.of(
+                                    "model", model,
+                                    "ttft_ms", (now - startNanos) / 1_000_000L));
+                        }
+                        if (!sendEvent(emitter, "token", Map.of("model", model, "text", token))) {
+                            cleanup.run();
+                            return;
+                        }
+                        if (count % COMPARE_STATS_EVERY == 0 && now > firstTokenNanos.get()) {
+                            sendEvent(emitter, "stats", Map.of(
+                                    "model", model,
+                                    "tokens", count,
+                                    "tokens_per_sec", (count - 1) * 1e9 / (now - firstTokenNanos.get())));
+                        }
+                    },
+                    // 完成回调，计量用量并上报该模型的最终统计
+                    done -> {
+                        if (!ended.compareAndSet(false, true)) {
+                            return;
+                        }
+                        wallTimer.dispose();
+                        if (done != null) {
+                            tokenUsageService.record(user, model, done.getPrompt_eval_count(), done.getEval_count());
+                        } else {
+                            tokenUsageService.record(user, model, null, tokens.get());
+                        }
+                        Map<String, Object> stats = compareStats(model, tokens.get(), firstTokenNanos.get(), startNanos);
+                        if (done != null) {
+                            stats.put("eval_count", done.getEval_count());
+                            stats.put("load_ms", done.getLoad_duration() != null ? done.getLoad_duration() / 1_000_000L : null);
+                            stats.put("prompt_eval_ms", done.getPrompt_eval_duration() != null ? done.getPrompt_eval_duration() / 1_000_000L : null);
+                            if (done.getEval_count() != null && done.getEval_duration() != null && done.getEval_duration() > 0) {
+                                stats.put("tokens_per_sec", done.getEval_count() * 1e9 / done.getEval_duration());
+                            }
+                        }
+                        summary.put(model, stats);
+                        sendEvent(emitter, "model_done", stats);
+                        finishOne.run();
+                    },
+                    // 错误回调，单个模型失败不影响其他模型
+                    error -> {
+                        if (!ended.compareAndSet(false, true)) {
+                            return;
+                        }
+                        wallTimer.dispose();
+                        log.error("对比请求模型{}发生错误: {}", model, error.getMessage());
+                        if (tokens.get() > 0) {
+                            tokenUsageService.record(user, model, null, tokens.get());
+                        }
+                        Map<String, Object> stats = new LinkedHashMap<>();
+                        stats.put("model", model);
+                        stats.put("error", error.getMessage());
+                        summary.put(model, stats);
+                        sendEvent(emitter, "model_error", stats);
+                        finishOne.run();
+                    }
+            );
+            subscriptions.add(subscription);
+            
+            // 超过生成配置的耗时上限时取消该模型的生成，已输出的token保留
+            wallTimer.update(generationProfileService.limitWallTime(profile, () -> {
+                if (!ended.compareAndSet(false, true)) {
+                    return;
+                }
+                subscription.dispose();
+                tokenUsageService.record(user, model, null, tokens.get());
+                Map<String, Object> stats = compareStats(model, tokens.get(), firstTokenNanos.get(), startNanos);
+                stats.put("truncated", "max_wall_time");
+                summary.put(model, stats);
+                sendEvent(emitter, "model_done", stats);
+                finishOne.run();
+            }));
+        }
+        
+        return emitter;
+    }
+    
+    /**
+     * 对比请求中单个模型结束时的基本统计
+     */
+    private static Map<String, Object> compareStats(String model, long tokens, long firstTokenNanos, long startNanos) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("model", model);
+        stats.put("tokens", tokens);
+        stats.put("ttft_ms", firstTokenNanos == 0 ? null : (firstTokenNanos - startNanos) / 1_000_000L);
+        stats.put("total_ms", (System.nanoTime() - startNanos) / 1_000_000L);
+        return stats;
+    }
+    
+    /**
+     * 发送一个SSE事件，数据序列化为JSON，多个上游线程并发发送时串行化
+     * 
+     * @return 发送成功返回true，连接已断开返回false
+     */
+    private boolean sendEvent(SseEmitter emitter, String name, Object data) {
+        try {
+            synchronized (emitter) {
+                emitter.send(SseEmitter.event()
+                        .name(name)
+                        .data(JSON.toJSONString(data)));
+            }
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            log.error("发送SSE事件失败: {}", e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * 按推理输出方式拆分完整文本，返回回答部分；event方式下推理内容作为一个reasoning事件发送
+     */
+    private String routeReasoning(SseEmitter emitter, String text, ThinkTagSplitter splitter, String mode) {
+        if (splitter == null) {
+            return text;
+        }
+        StringBuilder answer = new StringBuilder(text.length());
+        StringBuilder reasoning = new StringBuilder();
+        ThinkTagSplitter.Sink sink = new ThinkTagSplitter.Sink() {
+            @Override
+            public void answer(String part, int start, int end) {
+                answer.append(part, start, end);
+            }
+            
+            @Override
+            public void reasoning(String part, int start, int end) {
+                reasoning.append(part, start, end);
+            }
+        };
+        splitter.split(text, sink);
+        splitter.flush(sink);
+        if (ThinkTagSplitter.MODE_EVENT.equals(mode) && reasoning.length() > 0) {
+            sendEvent(emitter, "reasoning", reasoning.toString());
+        }
+        return answer.toString();
+    }
+    
+    /**
+     * summary方式下发送推理内容的字符数，以及推理块是否完整结束
+     */
+    private void sendReasoningSummary(SseEmitter emitter, ThinkTagSplitter splitter, String mode) {
+        if (splitter == null || !ThinkTagSplitter.MODE_SUMMARY.equals(mode)) {
+            return;
+        }
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("chars", splitter.reasoningChars());
+        data.put("closed", splitter.reasoningClosed());
+        sendEvent(emitter, "reasoning_summary", data);
+    }
+    
+    /**
+     * 批量生成 (JSON方式)
+     * 以有限并发执行所有条目，按完成顺序以NDJSON流式返回结果
+     * 
+     * @param request 批量请求DTO，包含jobId、model、items和concurrency参数
+     * @return NDJSON结果流，首行为任务信息，末行为任务汇总
+     */
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseBodyEmitter batch(@RequestBody BatchRequestDTO request) {
+        List<BatchItemDTO> items = request.getItems() != null ? request.getItems() : List.of();
+        log.info("收到批量请求，模型: {}, 条目数: {}, 任务ID: {}", request.getModel(), items.size(), request.getJobId());
+        return runBatch(request.getJobId(), request.getModel(), request.getConcurrency(), Flux.fromIterable(items));
+    }
+    
+    /**
+     * 批量生成 (NDJSON方式)
+     * 请求体每行一个BatchItemDTO，边读取边执行，适合超大批量
+     */
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseBodyEmitter batchNdjson(
+            HttpServletRequest servletRequest,
+            @RequestParam(required = false) String jobId,
+            @RequestParam(required = false, defaultValue = "deepseek-r1:8b") String model,
+            @RequestParam(required = false) Integer concurrency) throws IOException {
+        
+        log.info("收到NDJSON批量请求，模型: {}, 任务ID: {}", model, jobId);
+        BufferedReader reader = servletRequest.getReader();
+        // 按需读取请求体，读取是阻塞操作，放到弹性线程池中执行
+        Flux<BatchItemDTO> items = Flux.fromStream(reader::lines)
+                .filter(line -> !line.isBlank())
+                .map(this::parseBatchItem)
+                .subscribeOn(Schedulers.boundedElastic());
+        return runBatch(jobId, model, concurrency, items);
+    }
+    
+    /**
+     * 查询批量任务状态
+     */
+    @GetMapping("/batch/{jobId}")
+    public Map<String, Object> batchStatus(@PathVariable String jobId) {
+        BatchJobService.BatchJob job = batchJobService.getJob(jobId);
+        Map<String, Object> result = new HashMap<>();
+        if (job == null) {
+            result.put("success", false);
+            result.put("message", "任务不存在: " + jobId);
+            return result;
+        }
+        result.putAll(job.status("job"));
+        result.put("success", true);
+        return result;
+    }
+    
+    /**
+     * 下载批量任务已生成的全部结果（NDJSON）
+     */
+    @GetMapping("/batch/{jobId}/results")
+    public ResponseEntity<FileSystemResource> batchResults(@PathVariable String jobId) {
+        BatchJobService.BatchJob job = batchJobService.getJob(jobId);
+        if (job == null || !Files.exists(job.getFile())) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok()
+                .contentType(NDJSON_UTF8)
+                .body(new FileSystemResource(job.getFile()));
+    }
+    
+    private ResponseBodyEmitter runBatch(String jobId, String model, Integer concurrency, Flux<BatchItemDTO> items) {
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(ollamaProperties.getBatch().getTimeoutMs());
+        BatchJobService.BatchJob job;
+        try {
+            job = batchJobService.openJob(jobId);
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> line = new HashMap<>();
+            line.put("type", "error");
+            line.put("error", e.getMessage());
+            try {
+                emitter.send(JSON.toJSONString(line) + "\n", NDJSON_UTF8);
+            } catch (IOException ioe) {
+                log.warn("批量结果发送失败，客户端可能已断开: {}", ioe.getMessage());
+            }
+            emitter.complete();
+            return emitter;
+        }
+        
+        // 客户端断开后任务继续执行，结果仍会写入结果文件，可通过jobId查询或续跑
+        AtomicBoolean clientGone = new AtomicBoolean();
+        emitter.onTimeout(() -> clientGone.set(true));
+        emitter.onError(e -> clientGone.set(true));
+        
+        Consumer<String> sendLine = line -> {
+            if (clientGone.get()) {
+                return;
+            }
+            try {
+                emitter.send(line + "\n", NDJSON_UTF8);
+            } catch (IOException | IllegalStateException e) {
+                log.warn("批量结果发送失败，客户端可能已断开: {}", e.getMessage());
+                clientGone.set(true);
+            }
+        };
+        
+        sendLine.accept(JSON.toJSONString(job.status("job")));
+        batchJobService.run(job, model, items, batchJobService.resolveConcurrency(concurrency),
+                tokenUsageService.currentUser(),
+                sendLine,
+                summary -> {
+                    sendLine.accept(summary);
+                    if (!clientGone.get()) {
+                        emitter.complete();
+                    }
+                },
+                error -> {
+                    Map<String, Object> line = new HashMap<>();
+                    line.put("type", "error");
+                    line.put("job_id", job.getId());
+                    line.put("error", error.getMessage());
+                    sendLine.accept(JSON.toJSONString(line));
+                    if (!clientGone.get()) {
+                        emitter.complete();
+                    }
+                });
         return emitter;
     }
     
+    private BatchItemDTO parseBatchItem(String line) {
+        try {
+            return JSON.parseObject(line, BatchItemDTO.class);
+        } catch (Exception e) {
+            log.warn("解析批量条目失败: {}", e.getMessage());
+            return new BatchItemDTO();
+        }
+    }
+    
+    /**
+     * 查询系统提示前缀预热情况（各后端、模板和模型的提示处理token数及耗时）
+     */
+    @GetMapping("/prefix/stats")
+    public Map<String, Object> prefixStats() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.putAll(promptPrefixService.stats());
+        return result;
+    }
+
+    /**
+     * 查询语义缓存统计信息（命中率、节省的GPU时间等）
+     */
+    @GetMapping("/cache/stats")
+    public Map<String, Object> cacheStats() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.putAll(semanticCacheService.stats());
+        return result;
+    }
+    
+    /**
+     * 查询转录日志统计信息（写入数、丢弃数、当前段文件）
+     */
+    @GetMapping("/journal/stats")
+    public Map<String, Object> journalStats() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.putAll(transcriptJournalService.stats());
+        return result;
+    }
+    
+    /**
+     * 查询当前请求用户本周期的token用量，按模型分列；查询其他用户的用量使用需要管理令牌的/admin/usage。
+     * 用户取自ollama.usage.user-header，该请求头必须由前置代理在认证后设置
+     * 
+     * @param model 模型，为空时查询全部模型
+     */
+    @GetMapping("/usage")
+    public Map<String, Object> usage(@RequestParam(required = false) String model) {
+        Map<String, Object> result = new HashMap<>();
+        if (!tokenUsageService.isEnabled()) {
+            result.put("success", false);
+            result.put("message", "用量计量未开启");
+            return result;
+        }
+        try {
+            result.putAll(tokenUsageService.usage(tokenUsageService.currentUser(), model));
+        } catch (RuntimeException e) {
+            log.error("查询用量失败: {}", e.getMessage());
+            result.put("success", false);
+            result.put("message", "查询用量失败: " + e.getMessage());
+            return result;
+        }
+        result.put("success", true);
+        return result;
+    }
+    
+    /**
+     * 查询用量计量统计信息（计数器数、待写入批次、已写入行数）
+     */
+    @GetMapping("/usage/stats")
+    public Map<String, Object> usageStats() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.putAll(tokenUsageService.stats());
+        return result;
+    }
+
+    /**
+     * 获取请求中的上下文，紧凑编码优先，解码结果直接包装int数组
+     * 
+     * @throws IllegalArgumentException 紧凑编码格式错误或校验失败
+     */
+    private static List<Integer> resolveContext(ChatRequestDTO request) {
+        if (request.getCompactContext() != null && !request.getCompactContext().isEmpty()) {
+            return ContextCodec.asList(ContextCodec.decode(request.getCompactContext()));
+        }
+        return request.getContext();
+    }
+    
+    private static boolean isEmpty(List<Integer> context) {
+        return context == null || context.isEmpty();
+    }
+    
+    /**
+     * 查询生成配置及各配置超过耗时上限的次数
+     */
+    @GetMapping("/profiles")
+    public Map<String, Object> profiles() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("default_profile", ollamaProperties.getDefaultProfile());
+        result.put("profiles", generationProfileService.profiles());
+        return result;
+    }
+    
+    /**
+     * 查询模型预热统计信息（请求数、冷启动次数、load_duration等）
+     */
+    @GetMapping("/warmup/stats")
+    public Map<String, Object> warmupStats() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("backends", backendRegistry.healthyBackends());
+        result.put("models", modelWarmupService.stats());
+        return result;
+    }
+    
     /**
      * 为了兼容现有前端，保留GET方式的流式请求API
      */
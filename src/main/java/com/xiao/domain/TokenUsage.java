@@ -0,0 +1,32 @@
+package com.xiao.domain;
+
+import lombok.Data;
+
+import java.time.LocalDate;
+
+/**
+ * 按用户、模型、日期汇总的token用量
+ */
+@Data
+public class TokenUsage {
+    private String userId;
+
+    private String model;
+
+    private LocalDate usageDate;
+
+    /**
+     * 请求数
+     */
+    private Long requests;
+
+    /**
+     * 输入token数（prompt_eval_count）
+     */
+    private Long promptTokens;
+
+    /**
+     * 输出token数（eval_count）
+     */
+    private Long completionTokens;
+}
@@ -0,0 +1,30 @@
+package com.xiao.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 批量生成中的单个条目
+ * 既可以放在BatchRequestDTO.items中，也可以作为NDJSON的一行提交
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchItemDTO {
+    
+    /**
+     * 条目标识，由调用方提供，会原样返回；为空时使用条目序号
+     */
+    private String id;
+    
+    /**
+     * 提示文本
+     */
+    private String text;
+    
+    /**
+     * 模型名称，为空时使用批量请求的默认模型
+     */
+    private String model;
+}
@@ -0,0 +1,35 @@
+package com.xiao.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.List;
+
+/**
+ * 批量生成请求DTO
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchRequestDTO {
+    
+    /**
+     * 任务ID，传入已有任务的ID时只执行尚未成功的条目（断点续跑）
+     */
+    private String jobId;
+    
+    /**
+     * 默认模型名称，默认为deepseek-r1:8b
+     */
+    private String model = "deepseek-r1:8b";
+    
+    /**
+     * 待生成的条目列表
+     */
+    private List<BatchItemDTO> items;
+    
+    /**
+     * 期望的并发数，为空或超过上限时使用服务端上限
+     */
+    private Integer concurrency;
+}
@@ -0,0 +1,25 @@
+package com.xiao.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 对话消息DTO
+ * 对应Ollama /api/chat 中的单条message
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatMessageDTO {
+    
+    /**
+     * 角色："system"、"user"、"assistant"
+     */
+    private String role;
+    
+    /**
+     * 消息内容
+     */
+    private String content;
+}
@@ -30,6 +30,46 @@ public class ChatRequestDTO {
      */
     private List<Integer> context;
     
+    /**
+     * 紧凑编码的上下文（见ContextCodec），非空时优先于context使用
+     */
+    private String compactContext;
+    
+    /**
+     * 期望返回的上下文格式："json"（默认，整数数组）或"compact"（紧凑编码字符串）
+     */
+    private String contextFormat = "json";
+    
+    /**
+     * 会话ID，仅用于/chat接口，为空时创建新会话
+     */
+    private String conversationId;
+    
+    /**
+     * 生成配置名称，例如："fast"、"precise"，为空时使用默认配置
+     */
+    private String profile;
+    
+    /**
+     * 最大生成token数，为空时使用生成配置的默认值，超过配置上限时按上限处理
+     */
+    private Integer maxTokens;
+    
+    /**
+     * 系统提示模板名称（见ollama.prompt-prefix.templates），仅在新对话（没有上下文）时生效
+     */
+    private String systemPrompt;
+    
+    /**
+     * 提前停止规则，仅用于/stream接口，命中后立即停止生成
+     */
+    private StopRuleDTO stopRules;
+    
+    /**
+     * 推理内容（&lt;think&gt;块）输出方式："inline"（默认）、"drop"、"event"或"summary"，仅用于/stream接口
+     */
+    private String reasoning = "inline";
+    
     /**
      * 提供两参数的构造函数，为了兼容旧代码
      */
@@ -0,0 +1,36 @@
+package com.xiao.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.List;
+
+/**
+ * 多模型对比请求DTO
+ * 同一个提示同时发送给多个模型
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CompareRequestDTO {
+    
+    /**
+     * 用户输入的文本
+     */
+    private String text;
+    
+    /**
+     * 参与对比的模型列表
+     */
+    private List<String> models;
+    
+    /**
+     * 生成配置名称，所有模型使用同一配置，为空时使用默认配置
+     */
+    private String profile;
+    
+    /**
+     * 最大生成token数，为空时使用生成配置的默认值，超过配置上限时按上限处理
+     */
+    private Integer maxTokens;
+}
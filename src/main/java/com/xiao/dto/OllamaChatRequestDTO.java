@@ -0,0 +1,45 @@
+package com.xiao.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.List;
+
+/**
+ * Ollama Chat API请求DTO
+ * 用于向Ollama /api/chat 发送基于消息列表的对话请求
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OllamaChatRequestDTO {
+    
+    /**
+     * 模型名称
+     */
+    private String model;
+    
+    /**
+     * 完整的消息历史，按时间顺序排列
+     */
+    private List<ChatMessageDTO> messages;
+    
+    /**
+     * 是否流式返回结果
+     * 默认为false
+     */
+    @Builder.Default
+    private Boolean stream = false;
+    
+    /**
+     * 模型参数选项
+     */
+    private OllamaRequestDTO.Options options;
+    
+    /**
+     * 模型在内存中的驻留时长，例如："5m"、"1h"
+     */
+    private String keep_alive;
+}
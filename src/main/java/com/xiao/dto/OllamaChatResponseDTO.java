@@ -0,0 +1,65 @@
+package com.xiao.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Ollama Chat API响应DTO
+ * 非流式时为完整响应，流式时为单个响应片段
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OllamaChatResponseDTO {
+    
+    /**
+     * 模型名称
+     */
+    private String model;
+    
+    /**
+     * 助手回复的消息（流式时为增量内容）
+     */
+    private ChatMessageDTO message;
+    
+    /**
+     * 是否完成生成
+     */
+    private Boolean done;
+    
+    /**
+     * 完成原因
+     */
+    private String done_reason;
+    
+    /**
+     * 总处理时间（以纳秒为单位）
+     */
+    private Long total_duration;
+    
+    /**
+     * 加载模型的时间（以纳秒为单位）
+     */
+    private Long load_duration;
+    
+    /**
+     * 提示中的token数
+     */
+    private Integer prompt_eval_count;
+    
+    /**
+     * 提示处理时间（以纳秒为单位）
+     */
+    private Long prompt_eval_duration;
+    
+    /**
+     * 生成的token数
+     */
+    private Integer eval_count;
+    
+    /**
+     * 生成回复的时间（以纳秒为单位）
+     */
+    private Long eval_duration;
+}
@@ -49,6 +49,11 @@ public class OllamaRequestDTO {
      */
     private String system;
     
+    /**
+     * 模型在内存中的驻留时长，例如："5m"、"1h"，"0"表示请求结束后立即卸载
+     */
+    private String keep_alive;
+    
     /**
      * 模型参数选项内部类
      */
@@ -82,6 +87,11 @@ public class OllamaRequestDTO {
         @Builder.Default
         private Integer num_predict = 128;
         
+        /**
+         * 上下文窗口大小（token数）
+         */
+        private Integer num_ctx;
+        
         /**
          * 停止生成的字符串列表
          */
@@ -91,10 +101,5 @@ public class OllamaRequestDTO {
          * 重复惩罚，避免重复，值越大惩罚越强
          */
         private Float repeat_penalty;
-        
-        /**
-         * 是否保持上下文
-         */
-        private Boolean keep_alive;
     }
 } 
\ No newline at end of file
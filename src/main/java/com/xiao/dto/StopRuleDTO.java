@@ -0,0 +1,46 @@
+package com.xiao.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 提前停止规则DTO
+ * 任意一条规则命中后立即取消上游生成，已输出的内容保留。
+ * 规则只作用于回答：deepseek-r1等模型的&lt;think&gt;推理块不参与匹配，也不计入maxChars，
+ * 推理内容按inline方式输出时同样如此
+ */
+@Data
+public class StopRuleDTO {
+
+    /**
+     * 停止字符串，输出中出现任意一个时停止，输出截止到该字符串之前（不含）
+     */
+    private List<String> stop;
+
+    /**
+     * 停止正则，输出中匹配到时停止，输出截止到匹配位置之前（不含）。最长256个字符，
+     * 单个片段匹配时读取字符过多（例如灾难性回溯）时按regex_budget停止
+     */
+    private String regex;
+
+    /**
+     * 是否在第一行结束时停止（忽略开头的空行）
+     */
+    private Boolean firstLine;
+
+    /**
+     * 是否在第一个完整的JSON对象或数组结束时停止，输出包含结尾的括号
+     */
+    private Boolean json;
+
+    /**
+     * 最多输出的字符数
+     */
+    private Integer maxChars;
+
+    /**
+     * 最长生成时间（毫秒），从发出请求开始计算
+     */
+    private Long maxWallTimeMs;
+}
@@ -0,0 +1,47 @@
+package com.xiao.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * 一次非流式的后端HTTP调用（HttpUtil.doPost）
+ * 事件耗时 = 建立连接 + 等待响应头 + 读取响应体，非流式生成时Ollama在生成结束后才返回响应头
+ */
+@Name("com.xiao.BackendCall")
+@Label("后端调用")
+@Category({"Ollama", "后端"})
+@Description("非流式后端HTTP调用，分为建立连接、等待响应头和读取响应体三段")
+public class BackendCallEvent extends Event {
+
+    @Label("请求ID")
+    public String requestId;
+
+    @Label("后端")
+    public String backend;
+
+    @Label("路径")
+    public String path;
+
+    @Label("建立连接耗时")
+    @Description("复用连接或未建立连接时为0")
+    @Timespan(Timespan.NANOSECONDS)
+    public long connectTime;
+
+    @Label("等待响应头耗时")
+    @Description("从发起请求到收到响应头，包括建立连接")
+    @Timespan(Timespan.NANOSECONDS)
+    public long timeToHeaders;
+
+    @Label("状态码")
+    public int statusCode;
+
+    @Label("响应字符数")
+    public long responseChars;
+
+    @Label("错误")
+    public String error;
+}
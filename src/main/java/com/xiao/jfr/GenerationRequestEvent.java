@@ -0,0 +1,41 @@
+package com.xiao.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * 一次生成请求从进入控制器到结束（包括流式请求的最后一个SSE事件）
+ */
+@Name("com.xiao.GenerationRequest")
+@Label("生成请求")
+@Category({"Ollama", "生成"})
+@Description("生成请求从进入控制器到结束的耗时，流式请求包括全部SSE写入")
+public class GenerationRequestEvent extends Event {
+
+    @Label("请求ID")
+    public String requestId;
+
+    @Label("接口")
+    public String endpoint;
+
+    @Label("模型")
+    public String model;
+
+    @Label("结果")
+    @Description("ok、cached、stopped、truncated、error或cancelled")
+    public String outcome;
+
+    @Label("输出字符数")
+    public long outputChars;
+
+    @Label("SSE写入次数")
+    public long sseWrites;
+
+    @Label("SSE写入耗时")
+    @Timespan(Timespan.NANOSECONDS)
+    public long sseWriteTime;
+}
@@ -0,0 +1,99 @@
+package com.xiao.jfr;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一次生成请求的JFR跟踪句柄
+ * 请求开始时创建，结束时以结果提交GenerationRequestEvent，并累计SSE写入次数与耗时。
+ * 没有开启记录时返回空操作的句柄，请求路径上不做计时
+ */
+public class GenerationTrace {
+
+    private static final GenerationTrace DISABLED = new GenerationTrace(null, null);
+
+    private final GenerationRequestEvent event;
+    private final String requestId;
+    private final AtomicLong outputChars = new AtomicLong();
+    private final AtomicLong sseWrites = new AtomicLong();
+    private final AtomicLong sseWriteNanos = new AtomicLong();
+    private final AtomicBoolean finished = new AtomicBoolean();
+
+    private GenerationTrace(GenerationRequestEvent event, String requestId) {
+        this.event = event;
+        this.requestId = requestId;
+    }
+
+    /**
+     * 开始跟踪一个请求，需在处理请求的线程中调用以取得请求ID
+     */
+    public static GenerationTrace begin(String endpoint, String model) {
+        GenerationRequestEvent event = new GenerationRequestEvent();
+        if (!event.isEnabled()) {
+            return DISABLED;
+        }
+        event.begin();
+        event.endpoint = endpoint;
+        event.model = model;
+        return new GenerationTrace(event, RequestIds.current());
+    }
+
+    /**
+     * 计入输出的字符数
+     */
+    public void output(int chars) {
+        if (event != null) {
+            outputChars.addAndGet(chars);
+        }
+    }
+
+    /**
+     * 开始一次SSE写入，写入完成后调用sseEnd
+     *
+     * @return 写入事件，未开启记录时返回null
+     */
+    public SseWriteEvent sseBegin() {
+        if (event == null) {
+            return null;
+        }
+        SseWriteEvent write = new SseWriteEvent();
+        write.startNanos = System.nanoTime();
+        write.begin();
+        return write;
+    }
+
+    /**
+     * 结束一次SSE写入，耗时超过阈值时单独提交写入事件
+     */
+    public void sseEnd(SseWriteEvent write, String eventName) {
+        if (write == null) {
+            return;
+        }
+        write.end();
+        sseWrites.incrementAndGet();
+        sseWriteNanos.addAndGet(System.nanoTime() - write.startNanos);
+        if (write.shouldCommit()) {
+            write.requestId = requestId;
+            write.eventName = eventName;
+            write.commit();
+        }
+    }
+
+    /**
+     * 以结果结束跟踪并提交事件，只有第一次调用生效
+     */
+    public void finish(String outcome) {
+        if (event == null || !finished.compareAndSet(false, true)) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.requestId = requestId;
+            event.outcome = outcome;
+            event.outputChars = outputChars.get();
+            event.sseWrites = sseWrites.get();
+            event.sseWriteTime = sseWriteNanos.get();
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.xiao.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * 一次流式后端调用，从订阅到上游结束
+ * 首片段耗时 - 模型加载耗时 - 提示处理耗时 ≈ 建立连接与Ollama排队的耗时
+ */
+@Name("com.xiao.OllamaStream")
+@Label("流式生成")
+@Category({"Ollama", "后端"})
+@Description("流式后端调用，首片段耗时包括建立连接、排队、模型加载和提示处理")
+public class OllamaStreamEvent extends Event {
+
+    @Label("请求ID")
+    public String requestId;
+
+    @Label("模型")
+    public String model;
+
+    @Label("后端")
+    public String backend;
+
+    @Label("路径")
+    public String path;
+
+    @Label("首片段耗时")
+    @Timespan(Timespan.NANOSECONDS)
+    public long timeToFirstChunk;
+
+    @Label("片段数")
+    public long chunks;
+
+    @Label("模型加载耗时")
+    @Timespan(Timespan.NANOSECONDS)
+    public long loadDuration;
+
+    @Label("提示处理耗时")
+    @Timespan(Timespan.NANOSECONDS)
+    public long promptEvalDuration;
+
+    @Label("提示token数")
+    public long promptEvalCount;
+
+    @Label("生成耗时")
+    @Timespan(Timespan.NANOSECONDS)
+    public long evalDuration;
+
+    @Label("生成token数")
+    public long evalCount;
+
+    @Label("结果")
+    @Description("done、stopped、incomplete、cancelled或error")
+    public String outcome;
+}
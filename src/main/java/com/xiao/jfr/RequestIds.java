@@ -0,0 +1,48 @@
+package com.xiao.jfr;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 当前请求的请求ID
+ * 由RequestIdFilter在处理请求的线程中设置，控制器、HttpUtil及OllamaStreamUtil在该线程中读取，
+ * 用于关联同一请求的各个JFR事件；其他线程（例如定时任务）中为空字符串
+ */
+public final class RequestIds {
+
+    public static final String HEADER = "X-Request-Id";
+
+    // 与请求头一起传入的ID最多保留的长度
+    private static final int MAX_LENGTH = 64;
+
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private RequestIds() {
+    }
+
+    /**
+     * 使用客户端传入的ID，没有时生成一个16位十六进制ID
+     */
+    public static String resolve(String header) {
+        if (header != null && !header.isBlank()) {
+            String id = header.trim();
+            return id.length() > MAX_LENGTH ? id.substring(0, MAX_LENGTH) : id;
+        }
+        return String.format("%016x", ThreadLocalRandom.current().nextLong());
+    }
+
+    public static void set(String requestId) {
+        CURRENT.set(requestId);
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+
+    /**
+     * 当前线程的请求ID，不在请求线程中时返回空字符串
+     */
+    public static String current() {
+        String id = CURRENT.get();
+        return id != null ? id : "";
+    }
+}
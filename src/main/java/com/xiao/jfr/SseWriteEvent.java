@@ -0,0 +1,28 @@
+package com.xiao.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * 单次耗时较长的SSE写入，通常说明客户端接收慢、发送缓冲区已满
+ */
+@Name("com.xiao.SseWrite")
+@Label("SSE写入")
+@Category({"Ollama", "生成"})
+@Description("超过阈值的单次SSE事件写入")
+@Threshold("5 ms")
+public class SseWriteEvent extends Event {
+
+    @Label("请求ID")
+    public String requestId;
+
+    @Label("事件名")
+    public String eventName;
+
+    // 写入开始时间，用于累计到所属请求，不写入记录
+    transient long startNanos;
+}
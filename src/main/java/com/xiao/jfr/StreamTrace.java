@@ -0,0 +1,105 @@
+package com.xiao.jfr;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
+
+/**
+ * 一次流式后端调用的JFR跟踪句柄
+ * 包装上游的响应片段流：订阅时开始计时，记录首片段耗时和片段数，上游结束时提交OllamaStreamEvent。
+ * 没有开启记录时返回空操作的句柄，不包装片段流
+ */
+public class StreamTrace {
+
+    public static final String OUTCOME_DONE = "done";
+    public static final String OUTCOME_STOPPED = "stopped";
+    public static final String OUTCOME_INCOMPLETE = "incomplete";
+    public static final String OUTCOME_CANCELLED = "cancelled";
+    public static final String OUTCOME_ERROR = "error";
+
+    private static final StreamTrace DISABLED = new StreamTrace(null);
+
+    private final OllamaStreamEvent event;
+    private long startNanos;
+    private volatile String outcome;
+
+    private StreamTrace(OllamaStreamEvent event) {
+        this.event = event;
+    }
+
+    /**
+     * 创建跟踪句柄，需在发起请求的线程中调用以取得请求ID
+     */
+    public static StreamTrace of(String model, String backend, String path) {
+        OllamaStreamEvent event = new OllamaStreamEvent();
+        if (!event.isEnabled()) {
+            return DISABLED;
+        }
+        event.requestId = RequestIds.current();
+        event.model = model;
+        event.backend = backend;
+        event.path = path;
+        return new StreamTrace(event);
+    }
+
+    /**
+     * 包装上游的响应片段流，每个片段对应一行JSON
+     */
+    public Flux<String> wrap(Flux<String> chunks) {
+        if (event == null) {
+            return chunks;
+        }
+        return chunks
+                .doOnSubscribe(subscription -> {
+                    startNanos = System.nanoTime();
+                    event.begin();
+                })
+                .doOnNext(chunk -> {
+                    if (event.chunks++ == 0) {
+                        event.timeToFirstChunk = System.nanoTime() - startNanos;
+                    }
+                })
+                .doFinally(this::commit);
+    }
+
+    /**
+     * 记录完成片段中Ollama返回的耗时与token统计
+     */
+    public void done(Long loadDuration, Long promptEvalDuration, Integer promptEvalCount,
+                     Long evalDuration, Integer evalCount) {
+        if (event == null) {
+            return;
+        }
+        event.loadDuration = loadDuration != null ? loadDuration : 0L;
+        event.promptEvalDuration = promptEvalDuration != null ? promptEvalDuration : 0L;
+        event.promptEvalCount = promptEvalCount != null ? promptEvalCount : 0L;
+        event.evalDuration = evalDuration != null ? evalDuration : 0L;
+        event.evalCount = evalCount != null ? evalCount : 0L;
+        outcome = OUTCOME_DONE;
+    }
+
+    /**
+     * 标记由本端提前结束（例如停止规则命中），上游随后被取消
+     */
+    public void stopped() {
+        if (event != null) {
+            outcome = OUTCOME_STOPPED;
+        }
+    }
+
+    private void commit(SignalType signal) {
+        event.end();
+        if (!event.shouldCommit()) {
+            return;
+        }
+        if (outcome != null) {
+            event.outcome = outcome;
+        } else if (signal == SignalType.ON_ERROR) {
+            event.outcome = OUTCOME_ERROR;
+        } else if (signal == SignalType.CANCEL) {
+            event.outcome = OUTCOME_CANCELLED;
+        } else {
+            event.outcome = OUTCOME_INCOMPLETE;
+        }
+        event.commit();
+    }
+}
@@ -0,0 +1,53 @@
+package com.xiao.journal;
+
+import com.alibaba.fastjson.JSON;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 转录日志导出工具，将段文件导出为NDJSON输出到标准输出
+ * <pre>
+ * 用法：java -cp &lt;classpath&gt; com.xiao.journal.JournalExporter &lt;日志目录&gt; [请求ID]
+ * </pre>
+ */
+public class JournalExporter {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("用法: JournalExporter <日志目录> [请求ID]");
+            System.exit(1);
+        }
+        Path dir = Paths.get(args[0]);
+        Long requestId = args.length > 1 ? Long.parseLong(args[1]) : null;
+
+        BufferedWriter out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        JournalReader.readAll(dir, record -> {
+            if (requestId != null && record.requestId() != requestId) {
+                return;
+            }
+            Map<String, Object> line = new LinkedHashMap<>();
+            line.put("ts_nanos", record.timestampNanos());
+            line.put("type", record.typeName());
+            line.put("request_id", record.requestId());
+            if (!record.model().isEmpty()) {
+                line.put("model", record.model());
+            }
+            line.put("payload", record.payload());
+            try {
+                out.write(JSON.toJSONString(line));
+                out.newLine();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        out.flush();
+    }
+}
@@ -0,0 +1,89 @@
+package com.xiao.journal;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * 转录日志离线读取器
+ */
+public final class JournalReader {
+
+    private JournalReader() {
+    }
+
+    /**
+     * 按文件名（即创建顺序）列出目录中的所有段文件
+     */
+    public static List<Path> segments(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> p.getFileName().toString().endsWith(".jnl"))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    /**
+     * 按顺序读取目录中所有段文件的记录
+     */
+    public static void readAll(Path dir, Consumer<JournalRecord> consumer) throws IOException {
+        for (Path segment : segments(dir)) {
+            read(segment, consumer);
+        }
+    }
+
+    /**
+     * 读取单个段文件的记录，未写完的记录按其长度跳过，长度为0处即段内数据结束
+     *
+     * @return 读取到的记录数
+     */
+    public static int read(Path segment, Consumer<JournalRecord> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < JournalSegment.HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("不是合法的转录日志段: " + segment);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt(0) != JournalSegment.FILE_MAGIC || buffer.getInt(4) != JournalSegment.VERSION) {
+                throw new IOException("转录日志段文件头不匹配: " + segment);
+            }
+
+            int count = 0;
+            int position = JournalSegment.HEADER_SIZE;
+            while (position + JournalSegment.RECORD_OVERHEAD <= size) {
+                int length = buffer.getInt(position);
+                if (length < JournalSegment.RECORD_OVERHEAD || position + (long) length > size) {
+                    break;
+                }
+                if (buffer.getInt(position + length - 4) == JournalSegment.COMMIT) {
+                    consumer.accept(parse(buffer, position));
+                    count++;
+                }
+                position += length;
+            }
+            return count;
+        }
+    }
+
+    private static JournalRecord parse(MappedByteBuffer buffer, int position) {
+        byte type = buffer.get(position + 4);
+        long timestamp = buffer.getLong(position + 5);
+        long requestId = buffer.getLong(position + 13);
+        int modelLength = buffer.getShort(position + 21);
+        int payloadLength = buffer.getInt(position + 23);
+        byte[] model = new byte[modelLength];
+        byte[] payload = new byte[payloadLength];
+        buffer.get(position + JournalSegment.RECORD_OVERHEAD - 4, model);
+        buffer.get(position + JournalSegment.RECORD_OVERHEAD - 4 + modelLength, payload);
+        return new JournalRecord(type, timestamp, requestId,
+                new String(model, StandardCharsets.UTF_8),
+                new String(payload, StandardCharsets.UTF_8));
+    }
+}
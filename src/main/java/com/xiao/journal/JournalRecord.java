@@ -0,0 +1,46 @@
+package com.xiao.journal;
+
+/**
+ * 转录日志中的一条记录
+ *
+ * @param type 记录类型，见TYPE_*常量
+ * @param timestampNanos 记录时间（纪元纳秒）
+ * @param requestId 请求ID，同一请求的所有记录ID相同
+ * @param model 模型名称，仅REQUEST记录携带，其他记录为空串
+ * @param payload 记录内容
+ */
+public record JournalRecord(byte type, long timestampNanos, long requestId, String model, String payload) {
+
+    /**
+     * 请求开始，payload为请求信息JSON
+     */
+    public static final byte TYPE_REQUEST = 1;
+
+    /**
+     * 生成的token片段，payload为片段文本
+     */
+    public static final byte TYPE_TOKEN = 2;
+
+    /**
+     * 请求完成，payload为回答及耗时JSON
+     */
+    public static final byte TYPE_RESPONSE = 3;
+
+    /**
+     * 请求失败，payload为错误信息
+     */
+    public static final byte TYPE_ERROR = 4;
+
+    /**
+     * 记录类型名称
+     */
+    public String typeName() {
+        return switch (type) {
+            case TYPE_REQUEST -> "request";
+            case TYPE_TOKEN -> "token";
+            case TYPE_RESPONSE -> "response";
+            case TYPE_ERROR -> "error";
+            default -> "unknown";
+        };
+    }
+}
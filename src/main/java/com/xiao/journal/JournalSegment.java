@@ -0,0 +1,140 @@
+package com.xiao.journal;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 转录日志段文件
+ * 文件预分配固定大小并整体映射到内存，多个线程各自预留互不重叠的区域后并发写入，无需加锁。
+ * 预留时先以CAS把记录长度写入当前写位置（由0改为长度），成功后才推进写位置，
+ * 因此任何已预留区域的长度都先于其后的记录落在文件中，读取时总能跳过未写完的记录。
+ * <pre>
+ * 文件头：magic(int) version(int)
+ * 记录：  length(int) type(byte) timestamp(long) requestId(long) modelLength(short) payloadLength(int)
+ *        model(bytes) payload(bytes) 填充至4字节对齐 commit(int)
+ * </pre>
+ * length为0表示段内数据结束；commit标记最后以release语义写入，缺失说明该记录未写完（例如进程崩溃），读取时按length跳过
+ */
+final class JournalSegment {
+
+    static final int FILE_MAGIC = 0x4F4C544A;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    static final int RECORD_OVERHEAD = 31;
+    static final int COMMIT = 0x5EA1ED01;
+
+    private static final VarHandle INT_HANDLE = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final long createdAt = System.currentTimeMillis();
+    private final AtomicInteger writePosition = new AtomicInteger(HEADER_SIZE);
+    private final AtomicInteger writers = new AtomicInteger();
+
+    private JournalSegment(Path path, FileChannel channel, MappedByteBuffer buffer, int capacity) {
+        this.path = path;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.capacity = capacity;
+    }
+
+    /**
+     * 创建并映射新的段文件
+     */
+    static JournalSegment create(Path path, int capacity) throws IOException {
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        buffer.putInt(0, FILE_MAGIC);
+        buffer.putInt(4, VERSION);
+        return new JournalSegment(path, channel, buffer, capacity);
+    }
+
+    /**
+     * 记录占用的字节数（含4字节对齐填充）
+     */
+    static int recordLength(int modelLength, int payloadLength) {
+        return (RECORD_OVERHEAD + modelLength + payloadLength + 3) & ~3;
+    }
+
+    /**
+     * 追加一条记录
+     *
+     * @return 段已满时返回false，调用方应切换到新段后重试
+     */
+    boolean append(byte type, long timestampNanos, long requestId, byte[] model, byte[] payload) {
+        int length = recordLength(model.length, payload.length);
+        writers.incrementAndGet();
+        try {
+            int position = reserve(length);
+            if (position < 0) {
+                return false;
+            }
+            buffer.put(position + 4, type);
+            buffer.putLong(position + 5, timestampNanos);
+            buffer.putLong(position + 13, requestId);
+            buffer.putShort(position + 21, (short) model.length);
+            buffer.putInt(position + 23, payload.length);
+            buffer.put(position + RECORD_OVERHEAD - 4, model);
+            buffer.put(position + RECORD_OVERHEAD - 4 + model.length, payload);
+            INT_HANDLE.setRelease(buffer, position + length - 4, COMMIT);
+            return true;
+        } finally {
+            writers.decrementAndGet();
+        }
+    }
+
+    /**
+     * 预留length字节并写入记录长度
+     *
+     * @return 预留区域的起始位置，段剩余空间不足时返回-1
+     */
+    private int reserve(int length) {
+        while (true) {
+            int position = writePosition.get();
+            if (position > capacity - length) {
+                return -1;
+            }
+            if (INT_HANDLE.compareAndSet(buffer, position, 0, length)) {
+                writePosition.compareAndSet(position, position + length);
+                return position;
+            }
+            // 该位置已被其他线程预留，按其长度帮助推进写位置后重试
+            int claimed = (int) INT_HANDLE.getAcquire(buffer, position);
+            writePosition.compareAndSet(position, position + claimed);
+        }
+    }
+
+    Path path() {
+        return path;
+    }
+
+    long createdAt() {
+        return createdAt;
+    }
+
+    boolean isEmpty() {
+        return writePosition.get() == HEADER_SIZE;
+    }
+
+    boolean hasWriters() {
+        return writers.get() > 0;
+    }
+
+    /**
+     * 刷盘并关闭文件通道，映射在缓冲区被回收时释放
+     */
+    void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+}
@@ -0,0 +1,155 @@
+package com.xiao.journal;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 分段、只追加的转录日志
+ * 追加路径无锁：写入当前段，段写满时切换到新段（仅切换时加锁）；段按大小或时间滚动，
+ * 滚动后的旧段在没有写入者后刷盘关闭。离线读取见JournalReader
+ */
+@Slf4j
+public class TranscriptJournal implements Closeable {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final Path dir;
+    private final int segmentSize;
+    private final long rollIntervalMs;
+
+    private final Queue<JournalSegment> retired = new ConcurrentLinkedQueue<>();
+    private final AtomicLong segmentSequence = new AtomicLong();
+    private final LongAdder appended = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    // 纪元纳秒时间基准，记录时间 = 基准 + nanoTime增量
+    private final long epochBaseNanos = System.currentTimeMillis() * 1_000_000L;
+    private final long nanoBase = System.nanoTime();
+
+    private volatile JournalSegment current;
+    private volatile boolean closed;
+
+    /**
+     * @param dir 段文件目录
+     * @param segmentSize 单个段文件大小（字节）
+     * @param rollIntervalMs 段文件最长使用时间（毫秒），超过后滚动
+     */
+    public TranscriptJournal(Path dir, int segmentSize, long rollIntervalMs) throws IOException {
+        if (segmentSize <= JournalSegment.HEADER_SIZE + JournalSegment.RECORD_OVERHEAD) {
+            throw new IllegalArgumentException("段文件大小过小: " + segmentSize);
+        }
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.rollIntervalMs = rollIntervalMs;
+        Files.createDirectories(dir);
+        this.current = newSegment();
+    }
+
+    /**
+     * 追加一条记录
+     *
+     * @param type 记录类型，见JournalRecord.TYPE_*
+     * @param requestId 请求ID
+     * @param model 模型名称，可为null
+     * @param payload 记录内容，可为null
+     * @return 是否写入成功，日志已关闭或记录超过段大小时返回false
+     */
+    public boolean append(byte type, long requestId, String model, String payload) {
+        byte[] modelBytes = model != null ? model.getBytes(StandardCharsets.UTF_8) : EMPTY;
+        byte[] payloadBytes = payload != null ? payload.getBytes(StandardCharsets.UTF_8) : EMPTY;
+        if (modelBytes.length > Short.MAX_VALUE
+                || JournalSegment.recordLength(modelBytes.length, payloadBytes.length) > segmentSize - JournalSegment.HEADER_SIZE) {
+            dropped.increment();
+            return false;
+        }
+        long timestamp = epochBaseNanos + (System.nanoTime() - nanoBase);
+        while (!closed) {
+            JournalSegment segment = current;
+            if (segment.append(type, timestamp, requestId, modelBytes, payloadBytes)) {
+                appended.increment();
+                return true;
+            }
+            roll(segment);
+        }
+        dropped.increment();
+        return false;
+    }
+
+    /**
+     * 定期维护：按时间滚动当前段，关闭已无写入者的旧段
+     */
+    public void maintain() {
+        JournalSegment segment = current;
+        if (!closed && !segment.isEmpty() && System.currentTimeMillis() - segment.createdAt() >= rollIntervalMs) {
+            roll(segment);
+        }
+        Iterator<JournalSegment> iterator = retired.iterator();
+        while (iterator.hasNext()) {
+            JournalSegment old = iterator.next();
+            if (!old.hasWriters()) {
+                closeQuietly(old);
+                iterator.remove();
+            }
+        }
+    }
+
+    public long appendedCount() {
+        return appended.sum();
+    }
+
+    public long droppedCount() {
+        return dropped.sum();
+    }
+
+    public Path currentSegment() {
+        return current.path();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        retired.forEach(this::closeQuietly);
+        retired.clear();
+        closeQuietly(current);
+    }
+
+    // 仅当current仍是expected时切换，避免多个线程同时发现段满时重复滚动
+    private synchronized void roll(JournalSegment expected) {
+        if (closed || current != expected) {
+            return;
+        }
+        try {
+            current = newSegment();
+            retired.add(expected);
+        } catch (IOException e) {
+            log.error("创建转录日志段失败，停止记录: {}", e.getMessage());
+            closed = true;
+        }
+    }
+
+    private JournalSegment newSegment() throws IOException {
+        String name = String.format("transcript-%d-%06d.jnl", System.currentTimeMillis(), segmentSequence.incrementAndGet());
+        return JournalSegment.create(dir.resolve(name), segmentSize);
+    }
+
+    private void closeQuietly(JournalSegment segment) {
+        try {
+            segment.close();
+        } catch (IOException e) {
+            log.warn("关闭转录日志段失败: {}, {}", segment.path(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.xiao.mapper;
+
+import com.xiao.domain.TokenUsage;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Mapper
+public interface TokenUsageMapper {
+    /**
+     * 多行累加写入，已有的(用户, 模型, 日期)行在原值上累加
+     */
+    int upsertBatch(@Param("rows") List<TokenUsage> rows);
+
+    /**
+     * 登记已写入的批次，批次已登记过时返回0
+     */
+    int insertBatchMark(@Param("batchId") String batchId, @Param("rowCount") int rowCount);
+
+    int deleteBatchMarksBefore(@Param("before") LocalDateTime before);
+
+    /**
+     * 按模型汇总用户自from起的用量，model为null时查询全部模型
+     */
+    List<TokenUsage> sumByUser(@Param("userId") String userId, @Param("model") String model,
+                               @Param("from") LocalDate from);
+}
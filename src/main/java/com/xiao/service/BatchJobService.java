@@ -0,0 +1,403 @@
+package com.xiao.service;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.xiao.config.OllamaProperties;
+import com.xiao.dto.BatchItemDTO;
+import com.xiao.dto.OllamaRequestDTO;
+import com.xiao.dto.OllamaResponseDTO;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * 批量生成任务服务
+ * 以有限并发将条目分发到各个后端，结果按完成顺序输出并追加写入任务结果文件，
+ * 已成功的条目序号记录在任务中，相同jobId再次提交时会跳过这些条目
+ */
+@Slf4j
+@Service
+public class BatchJobService {
+
+    @Resource
+    private OllamaProperties ollamaProperties;
+
+    @Resource
+    private OllamaBackendRegistry backendRegistry;
+
+    @Resource
+    private ModelWarmupService modelWarmupService;
+
+    @Resource
+    private GenerationProfileService generationProfileService;
+
+    @Resource
+    private TokenUsageService tokenUsageService;
+
+    private final WebClient webClient = WebClient.builder().build();
+
+    // 所有批量任务
+    private final Map<String, BatchJob> jobs = new ConcurrentHashMap<>();
+
+    // jobId会作为结果文件名，只允许安全的字符，防止路径穿越
+    private static final Pattern JOB_ID_PATTERN = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    /**
+     * 获取已有任务，jobId为空时创建新任务；内存中没有但结果文件存在时（例如重启后）从结果文件恢复进度
+     *
+     * @throws IllegalArgumentException jobId格式不合法
+     */
+    public BatchJob openJob(String jobId) {
+        if (jobId != null && !JOB_ID_PATTERN.matcher(jobId).matches()) {
+            throw new IllegalArgumentException("jobId只能包含字母、数字、下划线和连字符，长度不超过64");
+        }
+        String id = jobId != null ? jobId : UUID.randomUUID().toString().replace("-", "");
+        return jobs.computeIfAbsent(id, k -> {
+            BatchJob job = new BatchJob(k, Paths.get(ollamaProperties.getBatch().getDir(), k + ".ndjson"));
+            job.restore();
+            return job;
+        });
+    }
+
+    /**
+     * 获取任务，内存中没有时从结果文件恢复，都不存在时返回null
+     */
+    public BatchJob getJob(String jobId) {
+        BatchJob job = jobs.get(jobId);
+        if (job != null || jobId == null || !JOB_ID_PATTERN.matcher(jobId).matches()
+                || !Files.exists(Paths.get(ollamaProperties.getBatch().getDir(), jobId + ".ndjson"))) {
+            return job;
+        }
+        return openJob(jobId);
+    }
+
+    /**
+     * 计算实际并发数：不超过 每后端并发数 * 可用后端数
+     */
+    public int resolveConcurrency(Integer requested) {
+        int backends = Math.max(1, backendRegistry.healthyBackends().size());
+        int limit = Math.max(1, ollamaProperties.getBatch().getConcurrencyPerBackend() * backends);
+        if (requested == null || requested <= 0) {
+            return limit;
+        }
+        return Math.min(requested, limit);
+    }
+
+    /**
+     * 执行批量任务
+     * 条目按需从items中拉取，最多同时有concurrency个请求在途，不会一次性把全部条目读入内存
+     *
+     * @param job 批量任务
+     * @param defaultModel 条目未指定模型时使用的模型
+     * @param items 条目流，序号按流中的位置计算
+     * @param concurrency 并发数
+     * @param user 计量用量的用户
+     * @param onLine 每完成一个条目输出一行NDJSON
+     * @param onComplete 任务完成回调，参数为汇总行
+     * @param onError 错误处理函数
+     */
+    public void run(BatchJob job, String defaultModel, Flux<BatchItemDTO> items, int concurrency, String user,
+                    Consumer<String> onLine, Consumer<String> onComplete, Consumer<Throwable> onError) {
+        if (!job.running.compareAndSet(false, true)) {
+            onError.accept(new IllegalStateException("批量任务正在执行: " + job.getId()));
+            return;
+        }
+        GenerationProfileService.Applied profile = batchProfile();
+        log.info("开始批量任务: {}, 并发数: {}, 已完成: {}, 生成配置: {}",
+                job.getId(), concurrency, job.completedCount(), profile.name());
+
+        items.index()
+                .filter(tuple -> !job.isDone(tuple.getT1()))
+                .flatMap(tuple -> generate(job, tuple.getT1(), tuple.getT2(), defaultModel, profile, user), concurrency)
+                .doFinally(signal -> {
+                    job.closeWriter();
+                    job.running.set(false);
+                })
+                .subscribe(
+                        onLine,
+                        error -> {
+                            log.error("批量任务异常: {}, {}", job.getId(), error.getMessage());
+                            onError.accept(error);
+                        },
+                        () -> {
+                            log.info("批量任务完成: {}, 成功: {}, 失败: {}", job.getId(), job.completedCount(), job.failedCount());
+                            onComplete.accept(JSON.toJSONString(job.status("done")));
+                        }
+                );
+    }
+
+    /**
+     * 批量条目使用的生成配置，配置名称不存在时不限制
+     */
+    private GenerationProfileService.Applied batchProfile() {
+        try {
+            return generationProfileService.apply(ollamaProperties.getBatch().getProfile(), null);
+        } catch (IllegalArgumentException e) {
+            log.warn("批量生成配置无效，不设置生成参数: {}", e.getMessage());
+            return new GenerationProfileService.Applied(null, null, 0);
+        }
+    }
+
+    /**
+     * 生成单个条目，失败（包括超过生成配置的耗时上限）时输出错误行而不是中断整个任务
+     */
+    private Mono<String> generate(BatchJob job, long index, BatchItemDTO item, String defaultModel,
+                                  GenerationProfileService.Applied profile, String user) {
+        String id = item != null && item.getId() != null ? item.getId() : String.valueOf(index);
+        String model = item != null && item.getModel() != null ? item.getModel() : defaultModel;
+        if (item == null || item.getText() == null) {
+            return Mono.just(job.fail(index, id, model, "text为空或条目格式错误"));
+        }
+
+        modelWarmupService.touch(model);
+        OllamaRequestDTO request = OllamaRequestDTO.builder()
+                .model(model)
+                .prompt(item.getText())
+                .stream(false)
+                .options(profile.options())
+                .keep_alive(modelWarmupService.keepAliveFor(model))
+                .build();
+
+        Mono<String> call = webClient.post()
+                .uri(backendRegistry.pick() + "/api/generate")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(JSON.toJSONString(request))
+                .retrieve()
+                .bodyToMono(String.class);
+        if (profile.maxWallTimeMs() > 0) {
+            // 超时后取消订阅，WebClient随之断开连接，Ollama停止生成
+            call = call.timeout(Duration.ofMillis(profile.maxWallTimeMs()))
+                    .doOnError(TimeoutException.class, e -> generationProfileService.recordWallTimeExceeded(profile));
+        }
+        return call
+                .map(body -> {
+                    OllamaResponseDTO response = JSON.parseObject(body, OllamaResponseDTO.class);
+                    modelWarmupService.recordLoadDuration(model, response.getLoad_duration());
+                    tokenUsageService.record(user, model, response.getPrompt_eval_count(), response.getEval_count());
+                    return job.succeed(index, id, model, response);
+                })
+                .onErrorResume(e -> Mono.just(job.fail(index, id, model, e.getMessage())));
+    }
+
+    /**
+     * 定期清理过期任务及其结果文件
+     * 重启前留下、之后没有再被读取的结果文件不在内存中，按文件修改时间清理
+     */
+    @Scheduled(fixedDelay = 600000)
+    public void cleanup() {
+        long expireBefore = System.currentTimeMillis() - ollamaProperties.getBatch().getJobTtlMs();
+        jobs.values().removeIf(job -> {
+            if (job.running.get() || job.updatedAt.get() > expireBefore) {
+                return false;
+            }
+            try {
+                Files.deleteIfExists(job.getFile());
+            } catch (IOException e) {
+                log.warn("删除批量任务结果文件失败: {}", job.getFile());
+            }
+            return true;
+        });
+
+        Path dir = Paths.get(ollamaProperties.getBatch().getDir());
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.ndjson")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (jobs.containsKey(name.substring(0, name.length() - ".ndjson".length()))) {
+                    continue;
+                }
+                try {
+                    if (Files.getLastModifiedTime(file).toMillis() < expireBefore) {
+                        Files.deleteIfExists(file);
+                        log.info("删除过期的批量任务结果文件: {}", file);
+                    }
+                } catch (IOException e) {
+                    log.warn("删除批量任务结果文件失败: {}", file);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("扫描批量任务目录失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 批量任务
+     */
+    public static class BatchJob {
+        private final String id;
+        private final Path file;
+        private final BitSet done = new BitSet();
+        // 最近一次执行失败且尚未成功的条目，续跑成功后清除，重复失败不重复计数
+        private final BitSet failed = new BitSet();
+        private final AtomicLong updatedAt = new AtomicLong(System.currentTimeMillis());
+        private final AtomicBoolean running = new AtomicBoolean();
+        private BufferedWriter writer;
+
+        BatchJob(String id, Path file) {
+            this.id = id;
+            this.file = file;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        public boolean isRunning() {
+            return running.get();
+        }
+
+        public synchronized boolean isDone(long index) {
+            return done.get((int) index);
+        }
+
+        public synchronized int completedCount() {
+            return done.cardinality();
+        }
+
+        public synchronized int failedCount() {
+            return failed.cardinality();
+        }
+
+        /**
+         * 扫描已有的结果文件，恢复已成功和失败的条目，续跑时跳过已成功的条目
+         */
+        private synchronized void restore() {
+            if (!Files.exists(file)) {
+                return;
+            }
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    JSONObject json;
+                    try {
+                        json = JSON.parseObject(line);
+                    } catch (Exception e) {
+                        // 进程崩溃时最后一行可能不完整
+                        continue;
+                    }
+                    if (json == null || !"result".equals(json.getString("type")) || json.getInteger("index") == null) {
+                        continue;
+                    }
+                    int index = json.getIntValue("index");
+                    if (json.getBooleanValue("success")) {
+                        done.set(index);
+                        failed.clear(index);
+                    } else if (!done.get(index)) {
+                        failed.set(index);
+                    }
+                }
+                updatedAt.set(Files.getLastModifiedTime(file).toMillis());
+                log.info("从结果文件恢复批量任务: {}, 已完成: {}, 失败: {}", id, done.cardinality(), failed.cardinality());
+            } catch (IOException e) {
+                log.error("读取批量任务结果文件失败: {}, {}", id, e.getMessage());
+            }
+        }
+
+        /**
+         * 任务状态，type用于区分NDJSON中的行类型
+         */
+        public Map<String, Object> status(String type) {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("type", type);
+            result.put("job_id", id);
+            result.put("running", running.get());
+            result.put("completed", completedCount());
+            result.put("failed", failedCount());
+            return result;
+        }
+
+        private String succeed(long index, String itemId, String model, OllamaResponseDTO response) {
+            Map<String, Object> line = new LinkedHashMap<>();
+            line.put("type", "result");
+            line.put("index", index);
+            line.put("id", itemId);
+            line.put("model", model);
+            line.put("success", true);
+            line.put("response", response.getResponse());
+            line.put("total_duration", response.getTotal_duration());
+            String json = JSON.toJSONString(line);
+            synchronized (this) {
+                done.set((int) index);
+                failed.clear((int) index);
+                append(json);
+            }
+            return json;
+        }
+
+        private String fail(long index, String itemId, String model, String error) {
+            Map<String, Object> line = new LinkedHashMap<>();
+            line.put("type", "result");
+            line.put("index", index);
+            line.put("id", itemId);
+            line.put("model", model);
+            line.put("success", false);
+            line.put("error", error);
+            String json = JSON.toJSONString(line);
+            synchronized (this) {
+                failed.set((int) index);
+                append(json);
+            }
+            return json;
+        }
+
+        // 追加写入结果文件，调用方持有锁
+        private void append(String json) {
+            updatedAt.set(System.currentTimeMillis());
+            try {
+                if (writer == null) {
+                    Files.createDirectories(file.getParent());
+                    writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                }
+                writer.write(json);
+                writer.newLine();
+                writer.flush();
+            } catch (IOException e) {
+                log.error("写入批量任务结果失败: {}, {}", id, e.getMessage());
+            }
+        }
+
+        private synchronized void closeWriter() {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    log.warn("关闭批量任务结果文件失败: {}", id);
+                }
+                writer = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,489 @@
+package com.xiao.service;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.xiao.cluster.ConsistentHashRing;
+import com.xiao.config.OllamaProperties;
+import com.xiao.jfr.RequestIds;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 集群服务
+ * 多个网关节点按静态配置组成集群，用一致性哈希把会话ID或亲和键映射到归属节点，
+ * 会话历史、语义缓存等节点本地状态因此集中在同一节点上。
+ * 非归属节点通过连接池把请求原样转发给归属节点；节点加入或离开时重建哈希环，
+ * 并通知监听者把不再归属本节点的状态移交出去
+ */
+@Slf4j
+@Service
+public class ClusterService {
+
+    /**
+     * 转发请求携带的请求头，值为发起转发的节点，收到该请求头的节点不再转发
+     */
+    public static final String FORWARDED_HEADER = "X-Cluster-Forwarded";
+
+    /**
+     * 节点间共享密钥请求头，转发和状态移交请求必须携带
+     */
+    public static final String SECRET_HEADER = "X-Cluster-Secret";
+
+    /**
+     * 节点状态接口
+     */
+    public static final String STATUS_PATH = "/api/ollama/admin/cluster";
+
+    // 不转发的逐跳请求头
+    private static final Set<String> HOP_HEADERS = Set.of(
+            "host", "connection", "content-length", "transfer-encoding", "keep-alive", "upgrade");
+
+    @Resource
+    private OllamaProperties ollamaProperties;
+
+    @Value("${server.port:8080}")
+    private int serverPort;
+
+    private String self;
+
+    private List<String> peers;
+
+    // 其他节点的健康状态，启动时假定全部可用，避免各节点启动顺序不同导致归属来回变化
+    private final Map<String, Boolean> peerUp = new ConcurrentHashMap<>();
+
+    // 本节点是否已离开集群（排空时）
+    private volatile boolean left;
+
+    private volatile ConsistentHashRing ring;
+
+    // 哈希环变化监听者
+    private final List<Runnable> rebalanceListeners = new CopyOnWriteArrayList<>();
+
+    private CloseableHttpClient client;
+
+    // 健康检查使用独立的连接池，转发连接占满时仍能正常探测
+    private CloseableHttpClient probeClient;
+
+    private final AtomicLong forwarded = new AtomicLong();
+    private final AtomicLong forwardFailures = new AtomicLong();
+    private final AtomicLong rebalances = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        OllamaProperties.Cluster config = ollamaProperties.getCluster();
+        if (config.isEnabled() && (config.getSecret() == null || config.getSecret().isEmpty())) {
+            throw new IllegalStateException("启用集群模式时必须配置ollama.cluster.secret");
+        }
+        self = normalize(config.getSelf() != null && !config.getSelf().isEmpty()
+                ? config.getSelf()
+                : "http://localhost:" + serverPort);
+        List<String> nodes = new ArrayList<>();
+        for (String peer : config.getPeers()) {
+            nodes.add(normalize(peer));
+        }
+        if (config.isEnabled() && !nodes.contains(self)) {
+            log.warn("集群节点列表中没有本节点{}，已自动加入，其他节点不会把请求转发到本节点", self);
+            nodes.add(self);
+        }
+        peers = Collections.unmodifiableList(nodes);
+        for (String peer : peers) {
+            if (!peer.equals(self)) {
+                peerUp.put(peer, true);
+            }
+        }
+        ring = new ConsistentHashRing(liveNodes(), config.getVirtualNodes());
+
+        PoolingHttpClientConnectionManager pool = new PoolingHttpClientConnectionManager();
+        pool.setDefaultMaxPerRoute(config.getMaxConnectionsPerPeer());
+        pool.setMaxTotal(config.getMaxConnectionsPerPeer() * Math.max(1, peers.size()));
+        client = HttpClients.custom()
+                .setConnectionManager(pool)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout(config.getConnectTimeoutMs())
+                        .setConnectionRequestTimeout(config.getConnectTimeoutMs())
+                        .setSocketTimeout(config.getReadTimeoutMs())
+                        .build())
+                .disableAutomaticRetries()
+                .disableRedirectHandling()
+                .build();
+
+        PoolingHttpClientConnectionManager probePool = new PoolingHttpClientConnectionManager();
+        probePool.setDefaultMaxPerRoute(1);
+        probePool.setMaxTotal(Math.max(1, peers.size()));
+        probeClient = HttpClients.custom()
+                .setConnectionManager(probePool)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout(config.getConnectTimeoutMs())
+                        .setConnectionRequestTimeout(config.getConnectTimeoutMs())
+                        .setSocketTimeout(2000)
+                        .build())
+                .disableAutomaticRetries()
+                .disableRedirectHandling()
+                .build();
+        if (config.isEnabled()) {
+            log.info("集群模式已启用，本节点: {}, 节点: {}", self, peers);
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        client.close();
+        probeClient.close();
+    }
+
+    public boolean isEnabled() {
+        return ollamaProperties.getCluster().isEnabled();
+    }
+
+    /**
+     * 本节点地址
+     */
+    public String self() {
+        return self;
+    }
+
+    /**
+     * 密钥是否与本节点配置的集群密钥一致，未配置密钥时总是false
+     */
+    public boolean isValidSecret(String secret) {
+        String expected = ollamaProperties.getCluster().getSecret();
+        if (expected == null || expected.isEmpty() || secret == null) {
+            return false;
+        }
+        return MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8), secret.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 请求是否为其他节点转发来的：带有转发请求头，且携带正确的集群密钥
+     */
+    public boolean isForwarded(HttpServletRequest request) {
+        return request.getHeader(FORWARDED_HEADER) != null && isValidSecret(request.getHeader(SECRET_HEADER));
+    }
+
+    /**
+     * 注册哈希环变化监听，在健康检查线程中调用
+     */
+    public void addRebalanceListener(Runnable listener) {
+        rebalanceListeners.add(listener);
+    }
+
+    /**
+     * 查找键的归属节点
+     *
+     * @return 节点地址，未启用集群或环为空时返回本节点
+     */
+    public String ownerOf(String key) {
+        if (!isEnabled()) {
+            return self;
+        }
+        String owner = ring.owner(key);
+        return owner != null ? owner : self;
+    }
+
+    /**
+     * 键是否归属本节点
+     */
+    public boolean isLocal(String key) {
+        return self.equals(ownerOf(key));
+    }
+
+    /**
+     * 本节点离开集群：从哈希环中移除本节点，归属本节点的键转移到其他节点。排空时调用，撤销排空时调用rejoin
+     */
+    public void leave() {
+        if (!isEnabled() || left) {
+            return;
+        }
+        left = true;
+        log.info("本节点离开集群: {}", self);
+        rebuild();
+    }
+
+    /**
+     * 本节点重新加入集群，其他节点在下一次健康检查时把本节点加回哈希环
+     */
+    public void rejoin() {
+        if (!isEnabled() || !left) {
+            return;
+        }
+        left = false;
+        log.info("本节点重新加入集群: {}", self);
+        rebuild();
+    }
+
+    /**
+     * 重新通知监听者移交状态，例如排空结束后移交之前仍在使用中的会话
+     */
+    public void rebalance() {
+        if (isEnabled()) {
+            notifyListeners();
+        }
+    }
+
+    /**
+     * 定期检查其他节点，成员变化时重建哈希环
+     */
+    @Scheduled(fixedDelayString = "${ollama.cluster.health-check-interval-ms:3000}")
+    public void probe() {
+        if (!isEnabled()) {
+            return;
+        }
+        boolean changed = false;
+        for (String peer : peerUp.keySet()) {
+            boolean up = ping(peer);
+            Boolean previous = peerUp.put(peer, up);
+            if (previous == null || previous != up) {
+                log.info("集群节点{}: {}", up ? "加入" : "离开", peer);
+                changed = true;
+            }
+        }
+        if (changed) {
+            rebuild();
+        }
+    }
+
+    /**
+     * 把请求转发到归属节点，并把响应（包括流式响应）原样写回
+     *
+     * @param owner 归属节点
+     * @param request 原始请求
+     * @param body 请求体，没有时为null
+     * @param response 原始响应
+     * @return 是否已转发；无法建立到归属节点的连接时返回false，节点被标记为不可用，由调用方在本节点处理。
+     * 其他失败时请求可能已到达归属节点，不能在本节点重复处理，直接返回503/504
+     */
+    public boolean forward(String owner, HttpServletRequest request, byte[] body,
+                           HttpServletResponse response) throws IOException {
+        String query = request.getQueryString();
+        RequestBuilder builder = RequestBuilder.create(request.getMethod())
+                .setUri(owner + request.getRequestURI() + (query != null ? "?" + query : ""));
+        Enumeration<String> names = request.getHeaderNames();
+        while (names.hasMoreElements()) {
+            String name = names.nextElement();
+            if (!HOP_HEADERS.contains(name.toLowerCase())
+                    && !FORWARDED_HEADER.equalsIgnoreCase(name) && !SECRET_HEADER.equalsIgnoreCase(name)) {
+                Enumeration<String> values = request.getHeaders(name);
+                while (values.hasMoreElements()) {
+                    builder.addHeader(name, values.nextElement());
+                }
+            }
+        }
+        builder.addHeader(FORWARDED_HEADER, self);
+        builder.addHeader(SECRET_HEADER, ollamaProperties.getCluster().getSecret());
+        // 归属节点沿用本节点的请求ID，两个节点的JFR事件可以关联
+        if (request.getHeader(RequestIds.HEADER) == null) {
+            builder.addHeader(RequestIds.HEADER, RequestIds.current());
+        }
+        if (body != null && body.length > 0) {
+            builder.setEntity(new ByteArrayEntity(body));
+        }
+        HttpUriRequest forwardRequest = builder.build();
+
+        CloseableHttpResponse forwardResponse;
+        try {
+            forwardResponse = client.execute(forwardRequest);
+        } catch (ConnectionPoolTimeoutException e) {
+            // 本节点到归属节点的连接已占满，是本节点过载而不是归属节点下线
+            forwardFailures.incrementAndGet();
+            log.warn("等待到{}的转发连接超时: {}", owner, e.getMessage());
+            writeError(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "转发连接已占满，请稍后重试");
+            return true;
+        } catch (ConnectException | ConnectTimeoutException e) {
+            // 未能建立连接，请求没有发出，节点可能已下线，立即重建哈希环而不等待下一次健康检查
+            forwardFailures.incrementAndGet();
+            log.warn("连接{}失败，在本节点处理: {}", owner, e.getMessage());
+            markDown(owner);
+            return false;
+        } catch (SocketTimeoutException e) {
+            // 已连接但等待响应超时，归属节点可能仍在生成，不能再在本节点重复处理
+            forwardFailures.incrementAndGet();
+            log.warn("等待{}响应超时: {}", owner, e.getMessage());
+            writeError(response, HttpServletResponse.SC_GATEWAY_TIMEOUT, "归属节点响应超时");
+            return true;
+        } catch (IOException e) {
+            // 连接已建立后失败（如连接被重置），归属节点可能已开始处理，由健康检查判断节点是否下线
+            forwardFailures.incrementAndGet();
+            log.warn("转发到{}失败: {}", owner, e.getMessage());
+            writeError(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "转发到归属节点失败，请稍后重试");
+            return true;
+        }
+        forwarded.incrementAndGet();
+        try (forwardResponse) {
+            response.setStatus(forwardResponse.getStatusLine().getStatusCode());
+            for (Header header : forwardResponse.getAllHeaders()) {
+                if (!HOP_HEADERS.contains(header.getName().toLowerCase())
+                        && !RequestIds.HEADER.equalsIgnoreCase(header.getName())) {
+                    response.addHeader(header.getName(), header.getValue());
+                }
+            }
+            HttpEntity entity = forwardResponse.getEntity();
+            if (entity == null) {
+                return true;
+            }
+            // 逐块写回并立即flush，流式响应的每个事件都能及时到达客户端
+            InputStream in = entity.getContent();
+            OutputStream out = response.getOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                try {
+                    out.write(buffer, 0, n);
+                    out.flush();
+                } catch (IOException e) {
+                    // 客户端已断开，中止转发连接，归属节点随之取消生成
+                    forwardRequest.abort();
+                    log.debug("客户端断开，中止转发: {}", e.getMessage());
+                    return true;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 向指定节点发送JSON请求，用于状态移交
+     *
+     * @return 对方是否返回success
+     */
+    public boolean postJson(String node, String path, String json) {
+        HttpPost post = new HttpPost(node + path);
+        post.setHeader(FORWARDED_HEADER, self);
+        post.setHeader(SECRET_HEADER, ollamaProperties.getCluster().getSecret());
+        post.setEntity(new StringEntity(json, ContentType.APPLICATION_JSON));
+        try (CloseableHttpResponse response = client.execute(post)) {
+            String body = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+            JSONObject result = JSON.parseObject(body);
+            return result != null && result.getBooleanValue("success");
+        } catch (Exception e) {
+            log.warn("发送到{}失败: {}", node, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 集群状态
+     */
+    public Map<String, Object> status() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", isEnabled());
+        result.put("self", self);
+        result.put("left", left);
+        result.put("ring", ring.nodes());
+        result.put("peers", new LinkedHashMap<>(peerUp));
+        result.put("forwarded", forwarded.get());
+        result.put("forward_failures", forwardFailures.get());
+        result.put("rebalances", rebalances.get());
+        return result;
+    }
+
+    private static void writeError(HttpServletResponse response, int status, String message) throws IOException {
+        response.setStatus(status);
+        response.setContentType(ContentType.APPLICATION_JSON.getMimeType());
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        JSONObject result = new JSONObject();
+        result.put("success", false);
+        result.put("message", message);
+        response.getWriter().write(result.toJSONString());
+    }
+
+    private void markDown(String peer) {
+        if (Boolean.TRUE.equals(peerUp.replace(peer, false))) {
+            log.info("集群节点离开: {}", peer);
+            rebuild();
+        }
+    }
+
+    private synchronized void rebuild() {
+        ConsistentHashRing next = new ConsistentHashRing(liveNodes(), ollamaProperties.getCluster().getVirtualNodes());
+        if (next.nodes().equals(ring.nodes())) {
+            return;
+        }
+        log.info("重建哈希环: {} -> {}", ring.nodes(), next.nodes());
+        ring = next;
+        rebalances.incrementAndGet();
+        notifyListeners();
+    }
+
+    private void notifyListeners() {
+        for (Runnable listener : rebalanceListeners) {
+            try {
+                listener.run();
+            } catch (Exception e) {
+                log.error("集群重新平衡回调失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    private List<String> liveNodes() {
+        List<String> nodes = new ArrayList<>();
+        for (String peer : peers) {
+            if (peer.equals(self) ? !left : Boolean.TRUE.equals(peerUp.get(peer))) {
+                nodes.add(peer);
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * 节点可用且未处于排空状态
+     */
+    private boolean ping(String peer) {
+        HttpGet get = new HttpGet(peer + STATUS_PATH);
+        try (CloseableHttpResponse response = probeClient.execute(get)) {
+            JSONObject status = JSON.parseObject(EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8));
+            return status != null && status.getBooleanValue("success") && !status.getBooleanValue("draining");
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static String normalize(String node) {
+        String result = node.trim();
+        while (result.endsWith("/")) {
+            result = result.substring(0, result.length() - 1);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,296 @@
+package com.xiao.service;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.xiao.config.OllamaProperties;
+import com.xiao.dto.ChatMessageDTO;
+import com.xiao.dto.OllamaChatResponseDTO;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 服务端会话历史管理
+ * 每轮对话只在历史末尾追加消息，已发送过的消息前缀保持不变，使Ollama的提示缓存能够命中；
+ * 同一会话固定发送到同一个后端，切换模型时只需重新发送消息列表，而不是token数组。
+ * 集群模式下新会话的ID归属本节点，哈希环变化后不再归属本节点的会话移交给新的归属节点
+ */
+@Slf4j
+@Service
+public class ConversationService {
+
+    @Resource
+    private OllamaProperties ollamaProperties;
+
+    @Resource
+    private OllamaBackendRegistry backendRegistry;
+
+    @Resource
+    private ClusterService clusterService;
+
+    /**
+     * 接收移交会话的接口
+     */
+    public static final String IMPORT_PATH = "/api/ollama/admin/cluster/conversations";
+
+    // 生成归属本节点的会话ID时的最大尝试次数
+    private static final int MAX_ID_ATTEMPTS = 64;
+
+    // 所有会话
+    private final Map<String, Conversation> conversations = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        clusterService.addRebalanceListener(this::handOff);
+    }
+
+    /**
+     * 获取已有会话，conversationId为空或不存在时创建新会话
+     */
+    public Conversation open(String conversationId) {
+        if (conversationId != null) {
+            Conversation existing = conversations.get(conversationId);
+            if (existing != null) {
+                return existing;
+            }
+        }
+        if (conversations.size() >= ollamaProperties.getChat().getMaxConversations()) {
+            evictOldest();
+        }
+        String id = conversationId != null ? conversationId : newId();
+        return conversations.computeIfAbsent(id, Conversation::new);
+    }
+
+    /**
+     * 接收其他节点移交的会话，本节点已有同一会话时保留轮数较多的一个
+     *
+     * @return 是否接收
+     */
+    public boolean importConversation(JSONObject snapshot) {
+        String id = snapshot.getString("conversation_id");
+        if (id == null) {
+            return false;
+        }
+        Conversation incoming = new Conversation(id);
+        incoming.model = snapshot.getString("model");
+        incoming.backend = snapshot.getString("backend");
+        incoming.turns = snapshot.getIntValue("turns");
+        incoming.lastPromptEvalCount = snapshot.getInteger("last_prompt_eval_count");
+        incoming.lastPromptEvalDuration = snapshot.getLong("last_prompt_eval_duration");
+        if (snapshot.getJSONArray("messages") != null) {
+            incoming.messages.addAll(snapshot.getJSONArray("messages").toJavaList(ChatMessageDTO.class));
+        }
+        Conversation kept = conversations.merge(id, incoming,
+                (existing, imported) -> existing.busy.get() || existing.turns >= imported.turns ? existing : imported);
+        return kept == incoming;
+    }
+
+    /**
+     * 把不再归属本节点的空闲会话移交给归属节点，移交成功后删除本地副本；
+     * 生成中的会话在下一次哈希环变化或排空结束时再移交
+     */
+    public void handOff() {
+        int moved = 0;
+        for (Conversation conversation : conversations.values()) {
+            String owner = clusterService.ownerOf(conversation.getId());
+            if (owner.equals(clusterService.self()) || conversation.busy.get()) {
+                continue;
+            }
+            Map<String, Object> snapshot = conversation.snapshot();
+            snapshot.put("backend", conversation.backend);
+            if (clusterService.postJson(owner, IMPORT_PATH, JSON.toJSONString(snapshot))) {
+                conversations.remove(conversation.getId(), conversation);
+                moved++;
+            }
+        }
+        if (moved > 0) {
+            log.info("移交{}个会话到其他节点", moved);
+        }
+    }
+
+    /**
+     * 获取会话，不存在时返回null
+     */
+    public Conversation get(String conversationId) {
+        return conversations.get(conversationId);
+    }
+
+    /**
+     * 删除会话
+     */
+    public boolean remove(String conversationId) {
+        return conversations.remove(conversationId) != null;
+    }
+
+    /**
+     * 为还没有消息的新会话设置系统提示；已有消息的会话保持不变，避免改变已缓存的消息前缀
+     */
+    public void applySystemPrompt(Conversation conversation, String system) {
+        synchronized (conversation) {
+            if (conversation.messages.isEmpty()) {
+                conversation.messages.add(new ChatMessageDTO("system", system));
+            }
+        }
+    }
+
+    /**
+     * 开始一轮对话：追加用户消息，返回本轮要发送给Ollama的消息列表快照
+     *
+     * @throws IllegalStateException 同一会话上一轮对话尚未结束
+     */
+    public List<ChatMessageDTO> beginTurn(Conversation conversation, String model, String text) {
+        if (!conversation.busy.compareAndSet(false, true)) {
+            throw new IllegalStateException("会话正在生成中: " + conversation.getId());
+        }
+        synchronized (conversation) {
+            conversation.lastAccess = System.currentTimeMillis();
+            if (conversation.model != null && !conversation.model.equals(model)) {
+                log.info("会话{}切换模型: {} -> {}", conversation.getId(), conversation.model, model);
+            }
+            conversation.model = model;
+            trim(conversation);
+            conversation.messages.add(new ChatMessageDTO("user", text));
+            return new ArrayList<>(conversation.messages);
+        }
+    }
+
+    /**
+     * 本轮对话成功结束：追加助手回复并记录提示处理耗时
+     */
+    public void completeTurn(Conversation conversation, String answer, OllamaChatResponseDTO done) {
+        synchronized (conversation) {
+            conversation.messages.add(new ChatMessageDTO("assistant", answer != null ? answer : ""));
+            conversation.lastAccess = System.currentTimeMillis();
+            conversation.turns++;
+            if (done != null) {
+                conversation.lastPromptEvalCount = done.getPrompt_eval_count();
+                conversation.lastPromptEvalDuration = done.getPrompt_eval_duration();
+            }
+        }
+        conversation.busy.set(false);
+    }
+
+    /**
+     * 本轮对话失败：撤回本轮追加的用户消息，保持历史不变
+     */
+    public void abortTurn(Conversation conversation) {
+        synchronized (conversation) {
+            int last = conversation.messages.size() - 1;
+            if (last >= 0 && "user".equals(conversation.messages.get(last).getRole())) {
+                conversation.messages.remove(last);
+            }
+        }
+        conversation.busy.set(false);
+    }
+
+    /**
+     * 获取会话绑定的后端，绑定的后端不可用时重新选择
+     * 同一后端上才能复用已缓存的消息前缀
+     */
+    public String backendFor(Conversation conversation) {
+        String backend = conversation.backend;
+        List<String> healthy = backendRegistry.healthyBackends();
+        if (backend == null || (!healthy.isEmpty() && !healthy.contains(backend))) {
+            backend = backendRegistry.pick();
+            conversation.backend = backend;
+        }
+        return backend;
+    }
+
+    /**
+     * 定期清理过期会话
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void cleanup() {
+        long expireBefore = System.currentTimeMillis() - ollamaProperties.getChat().getConversationTtlMs();
+        conversations.values().removeIf(c -> !c.busy.get() && c.lastAccess < expireBefore);
+    }
+
+    /**
+     * 历史超过上限时一次性裁剪到trimTo条，system消息始终保留，裁剪后以user消息开头
+     */
+    private void trim(Conversation conversation) {
+        List<ChatMessageDTO> messages = conversation.messages;
+        int systemCount = 0;
+        while (systemCount < messages.size() && "system".equals(messages.get(systemCount).getRole())) {
+            systemCount++;
+        }
+        int dialogCount = messages.size() - systemCount;
+        if (dialogCount <= ollamaProperties.getChat().getMaxMessages()) {
+            return;
+        }
+        int removeCount = dialogCount - ollamaProperties.getChat().getTrimTo();
+        while (systemCount + removeCount < messages.size()
+                && !"user".equals(messages.get(systemCount + removeCount).getRole())) {
+            removeCount++;
+        }
+        messages.subList(systemCount, systemCount + removeCount).clear();
+        log.info("裁剪会话{}历史，移除{}条消息", conversation.getId(), removeCount);
+    }
+
+    /**
+     * 生成新会话ID，集群模式下只使用归属本节点的ID，保证后续请求会被路由回本节点
+     */
+    private String newId() {
+        String id = UUID.randomUUID().toString().replace("-", "");
+        for (int i = 1; i < MAX_ID_ATTEMPTS && !clusterService.isLocal(id); i++) {
+            id = UUID.randomUUID().toString().replace("-", "");
+        }
+        return id;
+    }
+
+    private void evictOldest() {
+        conversations.values().stream()
+                .filter(c -> !c.busy.get())
+                .min(Comparator.comparingLong(c -> c.lastAccess))
+                .ifPresent(c -> conversations.remove(c.getId()));
+    }
+
+    /**
+     * 会话
+     */
+    public static class Conversation {
+        private final String id;
+        private final List<ChatMessageDTO> messages = new ArrayList<>();
+        private final AtomicBoolean busy = new AtomicBoolean();
+        private volatile long lastAccess = System.currentTimeMillis();
+        private volatile String model;
+        private volatile String backend;
+        private int turns;
+        private Integer lastPromptEvalCount;
+        private Long lastPromptEvalDuration;
+
+        Conversation(String id) {
+            this.id = id;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * 会话概要及消息历史
+         */
+        public synchronized Map<String, Object> snapshot() {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("conversation_id", id);
+            result.put("model", model);
+            result.put("turns", turns);
+            result.put("last_prompt_eval_count", lastPromptEvalCount);
+            result.put("last_prompt_eval_duration", lastPromptEvalDuration);
+            result.put("messages", new ArrayList<>(messages));
+            return result;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.xiao.service;
+
+import com.alibaba.fastjson.JSON;
+import com.xiao.config.OllamaProperties;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.Disposable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 下线排空服务
+ * 进入排空状态后不再接收新请求，等待进行中的流式响应和普通请求结束，
+ * 超过期限仍未结束的流会收到reconnect事件后关闭，并取消对应的上游生成。
+ * 集群模式下先离开集群，新请求由其他节点接管，空闲会话移交给新的归属节点。
+ * 批量任务不在等待范围内，已完成的条目写在结果文件中，重新部署后以相同jobId再次提交即可跳过这些条目继续执行。
+ * 应用关闭时在Web服务器优雅停机之前自动执行，也可以通过接口提前触发，通过接口触发的排空可以用undrain撤销
+ */
+@Slf4j
+@Service
+public class DrainService implements SmartLifecycle {
+
+    @Resource
+    private OllamaProperties ollamaProperties;
+
+    @Resource
+    private ClusterService clusterService;
+
+    // 所有进行中的流式响应
+    private final Map<Long, ActiveStream> streams = new ConcurrentHashMap<>();
+
+    private final AtomicLong streamIds = new AtomicLong();
+
+    // 进行中的普通请求数
+    private final AtomicInteger activeAsks = new AtomicInteger();
+
+    private volatile boolean draining;
+
+    private volatile boolean running;
+
+    // 应用正在关闭，此时的排空不能撤销
+    private volatile boolean stopping;
+
+    /**
+     * 是否处于排空状态
+     */
+    public boolean isDraining() {
+        return draining;
+    }
+
+    /**
+     * 登记一个流式响应，流结束时需调用closeStream
+     */
+    public ActiveStream openStream(SseEmitter emitter) {
+        ActiveStream stream = new ActiveStream(streamIds.incrementAndGet(), emitter);
+        streams.put(stream.getId(), stream);
+        return stream;
+    }
+
+    /**
+     * 流式响应结束（完成、超时或出错）
+     */
+    public void closeStream(ActiveStream stream) {
+        streams.remove(stream.getId());
+    }
+
+    /**
+     * 普通请求开始
+     */
+    public void beginAsk() {
+        activeAsks.incrementAndGet();
+    }
+
+    /**
+     * 普通请求结束
+     */
+    public void endAsk() {
+        activeAsks.decrementAndGet();
+    }
+
+    /**
+     * 进入排空状态并等待进行中的请求结束，超过期限后通知剩余的流重连
+     * 可重复调用；等待期间被undrain撤销时立即返回
+     */
+    public synchronized void drain() {
+        if (!draining) {
+            draining = true;
+            log.info("进入排空状态，进行中的流: {}, 普通请求: {}", streams.size(), activeAsks.get());
+            clusterService.leave();
+        }
+        long deadline = System.currentTimeMillis() + ollamaProperties.getDrain().getTimeoutMs();
+        while (draining && (!streams.isEmpty() || activeAsks.get() > 0) && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (!draining) {
+            log.info("排空已撤销");
+            return;
+        }
+        if (!streams.isEmpty()) {
+            log.warn("排空超时，通知{}个流重连", streams.size());
+            streams.values().forEach(this::sendReconnect);
+            streams.clear();
+        }
+        // 移交排空期间结束生成的会话
+        clusterService.rebalance();
+        log.info("排空完成，剩余普通请求: {}", activeAsks.get());
+    }
+
+    /**
+     * 撤销通过接口触发的排空：重新接收新请求并重新加入集群，例如误触发排空或取消发布时调用；应用关闭时不能撤销。
+     * 不等待正在进行的drain，其等待循环在下一次检查时退出；已收到reconnect事件的流不受影响
+     *
+     * @return 调用前是否处于排空状态
+     */
+    public boolean undrain() {
+        if (!draining || stopping) {
+            return false;
+        }
+        draining = false;
+        clusterService.rejoin();
+        log.info("撤销排空状态");
+        return true;
+    }
+
+    /**
+     * 排空状态信息
+     */
+    public Map<String, Object> status() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("draining", draining);
+        result.put("active_streams", streams.size());
+        result.put("active_asks", activeAsks.get());
+        return result;
+    }
+
+    private void sendReconnect(ActiveStream stream) {
+        long delay = ollamaProperties.getDrain().getReconnectDelayMs();
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("reason", "server_draining");
+        data.put("retry_after_ms", delay);
+        try {
+            synchronized (stream.getEmitter()) {
+                stream.getEmitter().send(SseEmitter.event()
+                        .name("reconnect")
+                        .reconnectTime(delay)
+                        .data(JSON.toJSONString(data)));
+            }
+            stream.getEmitter().complete();
+        } catch (Exception e) {
+            log.debug("发送重连提示失败: {}", e.getMessage());
+        }
+        Disposable upstream = stream.upstream;
+        if (upstream != null) {
+            upstream.dispose();
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        stopping = true;
+        drain();
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * 最先停止，保证在Web服务器优雅停机之前完成排空
+     */
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * 进行中的流式响应
+     */
+    public static class ActiveStream {
+        private final long id;
+        private final SseEmitter emitter;
+        private volatile Disposable upstream;
+
+        ActiveStream(long id, SseEmitter emitter) {
+            this.id = id;
+            this.emitter = emitter;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public SseEmitter getEmitter() {
+            return emitter;
+        }
+
+        /**
+         * 设置上游订阅，排空超时时会被取消
+         */
+        public void setUpstream(Disposable upstream) {
+            this.upstream = upstream;
+        }
+    }
+}
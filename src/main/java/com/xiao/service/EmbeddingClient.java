@@ -0,0 +1,15 @@
+package com.xiao.service;
+
+/**
+ * 文本向量化接口
+ */
+public interface EmbeddingClient {
+
+    /**
+     * 将文本转换为向量
+     *
+     * @param text 文本
+     * @return 向量，不要求已归一化
+     */
+    float[] embed(String text);
+}
@@ -0,0 +1,158 @@
+package com.xiao.service;
+
+import com.xiao.config.OllamaProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * JFR记录服务
+ * 按需开启飞行记录，记录JVM事件及com.xiao.jfr中的生成链路事件（生成请求、后端调用、流式生成、SSE写入），
+ * 记录在内存/磁盘中按最长保留时间和最大大小滚动，需要时导出为.jfr文件，用JDK Mission Control或jfr命令查看。
+ * 记录中不包含环境变量、系统属性、JVM启动参数和本机进程的命令行
+ */
+@Slf4j
+@Service
+public class FlightRecordingService {
+
+    private static final String RECORDING_NAME = "ollama-demo";
+
+    private static final String[] SENSITIVE_EVENTS = {
+            "jdk.InitialEnvironmentVariable", "jdk.InitialSystemProperty", "jdk.JVMInformation", "jdk.SystemProcess"
+    };
+
+    @Resource
+    private OllamaProperties ollamaProperties;
+
+    private Recording recording;
+    private String settings;
+    private Path lastDump;
+
+    @PostConstruct
+    public void init() {
+        if (ollamaProperties.getJfr().isEnabled()) {
+            try {
+                start(null);
+            } catch (IllegalArgumentException e) {
+                log.error("启动JFR记录失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 开始记录，已在记录时直接返回
+     *
+     * @param settings JFR预置配置名称：default（开销约1%）或profile（约2%），为空时使用配置文件中的设置
+     * @return 是否正在记录
+     * @throws IllegalArgumentException 配置名称不存在
+     */
+    public synchronized boolean start(String settings) {
+        if (isRecording()) {
+            return true;
+        }
+        OllamaProperties.Jfr jfr = ollamaProperties.getJfr();
+        String name = settings != null && !settings.isEmpty() ? settings : jfr.getSettings();
+        Configuration configuration;
+        try {
+            configuration = Configuration.getConfiguration(name);
+        } catch (IOException | ParseException e) {
+            throw new IllegalArgumentException("JFR配置不存在: " + name);
+        }
+        try {
+            recording = new Recording(configuration);
+            // 预置配置会记录环境变量、系统属性、JVM启动参数和本机进程的命令行，其中可能包含集群密钥、数据库密码等
+            for (String event : SENSITIVE_EVENTS) {
+                recording.disable(event);
+            }
+            recording.setName(RECORDING_NAME);
+            recording.setToDisk(true);
+            recording.setMaxAge(Duration.ofSeconds(jfr.getMaxAgeSeconds()));
+            recording.setMaxSize(jfr.getMaxSizeMb() * 1024L * 1024L);
+            recording.start();
+            this.settings = name;
+            log.info("开始JFR记录, 配置: {}, 最长保留: {}秒, 最大大小: {}MB",
+                    name, jfr.getMaxAgeSeconds(), jfr.getMaxSizeMb());
+            return true;
+        } catch (RuntimeException e) {
+            log.error("开始JFR记录失败: {}", e.getMessage());
+            recording = null;
+            return false;
+        }
+    }
+
+    /**
+     * 把当前记录的内容导出为文件，记录继续进行；只保留最近一次导出的文件
+     *
+     * @return 导出的文件，未在记录或导出失败时返回null
+     */
+    public synchronized Path dump() {
+        if (!isRecording()) {
+            return null;
+        }
+        try {
+            Path dir = Paths.get(ollamaProperties.getJfr().getDir());
+            Files.createDirectories(dir);
+            Path file = dir.resolve("recording-" + System.currentTimeMillis() + ".jfr");
+            recording.dump(file);
+            if (lastDump != null && !lastDump.equals(file)) {
+                Files.deleteIfExists(lastDump);
+            }
+            lastDump = file;
+            log.info("导出JFR记录: {}, 大小: {}字节", file, Files.size(file));
+            return file;
+        } catch (IOException e) {
+            log.error("导出JFR记录失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 停止并丢弃当前记录，需要保留时先调用dump
+     */
+    public synchronized void stop() {
+        if (recording == null) {
+            return;
+        }
+        recording.close();
+        recording = null;
+        log.info("停止JFR记录");
+    }
+
+    @PreDestroy
+    public void close() {
+        stop();
+    }
+
+    private boolean isRecording() {
+        return recording != null && recording.getState() == RecordingState.RUNNING;
+    }
+
+    /**
+     * 记录状态
+     */
+    public synchronized Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("recording", isRecording());
+        if (recording != null) {
+            status.put("settings", settings);
+            status.put("start_time", recording.getStartTime() != null ? recording.getStartTime().toString() : null);
+            status.put("size", recording.getSize());
+        }
+        status.put("last_dump", lastDump != null ? lastDump.toString() : null);
+        return status;
+    }
+}
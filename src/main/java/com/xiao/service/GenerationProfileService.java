@@ -0,0 +1,138 @@
+package com.xiao.service;
+
+import com.xiao.config.OllamaProperties;
+import com.xiao.dto.OllamaRequestDTO;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 生成配置服务
+ * 按请求选择的命名配置填充生成参数，并对生成token数、上下文窗口和单次请求耗时施加上限，
+ * 使每个请求占用的GPU时间有可预期的上界
+ */
+@Slf4j
+@Service
+public class GenerationProfileService {
+
+    @Resource
+    private OllamaProperties ollamaProperties;
+
+    // 各配置因超过耗时上限被取消的请求数
+    private final Map<String, LongAdder> wallTimeExceeded = new ConcurrentHashMap<>();
+
+    /**
+     * 解析生成配置
+     *
+     * @param profileName 配置名称，为空时使用默认配置
+     * @param maxTokens 客户端期望的最大生成token数，可为null，超过配置上限时按上限处理
+     * @return 生效的配置；未配置任何生成配置时返回不带参数、不限耗时的结果
+     * @throws IllegalArgumentException 配置名称不存在
+     */
+    public Applied apply(String profileName, Integer maxTokens) {
+        String name = profileName != null && !profileName.isBlank() ? profileName : ollamaProperties.getDefaultProfile();
+        Map<String, OllamaProperties.GenerationProfile> profiles = ollamaProperties.getProfiles();
+        if (profiles.isEmpty()) {
+            return new Applied(null, null, 0);
+        }
+        OllamaProperties.GenerationProfile profile = name != null ? profiles.get(name) : null;
+        if (profile == null) {
+            throw new IllegalArgumentException("未知的生成配置: " + name + "，可选: " + profiles.keySet());
+        }
+
+        int numPredict = profile.getNumPredict();
+        if (maxTokens != null && maxTokens > 0) {
+            numPredict = Math.min(maxTokens, profile.getMaxNumPredict());
+        }
+        OllamaRequestDTO.Options options = OllamaRequestDTO.Options.builder()
+                .top_p(profile.getTopP())
+                .top_k(profile.getTopK())
+                .repeat_penalty(profile.getRepeatPenalty())
+                .num_predict(Math.min(numPredict, profile.getMaxNumPredict()))
+                .num_ctx(profile.getNumCtx())
+                .build();
+        // 未配置温度时不传该参数，使用模型自身的默认值
+        options.setTemperature(profile.getTemperature());
+        return new Applied(name, options, profile.getMaxWallTimeMs());
+    }
+
+    /**
+     * 为流式请求设置耗时上限，到期后执行onExpire（由调用方取消上游生成并结束响应）
+     *
+     * @return 定时任务句柄，请求正常结束后可dispose；不限耗时时返回已取消的句柄
+     */
+    public Disposable limitWallTime(Applied applied, Runnable onExpire) {
+        if (applied.maxWallTimeMs() <= 0) {
+            return Disposables.disposed();
+        }
+        return Schedulers.parallel().schedule(() -> {
+            recordWallTimeExceeded(applied);
+            onExpire.run();
+        }, applied.maxWallTimeMs(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 记录一次因超过耗时上限被取消的请求
+     */
+    public void recordWallTimeExceeded(Applied applied) {
+        if (applied.name() != null) {
+            log.warn("请求超过生成配置{}的耗时上限{}ms，已取消", applied.name(), applied.maxWallTimeMs());
+            wallTimeExceeded.computeIfAbsent(applied.name(), k -> new LongAdder()).increment();
+        }
+    }
+
+    /**
+     * 所有生成配置及超时取消次数
+     */
+    public Map<String, Object> profiles() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        ollamaProperties.getProfiles().forEach((name, profile) -> {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("temperature", profile.getTemperature());
+            item.put("top_p", profile.getTopP());
+            item.put("top_k", profile.getTopK());
+            item.put("repeat_penalty", profile.getRepeatPenalty());
+            item.put("num_predict", profile.getNumPredict());
+            item.put("max_num_predict", profile.getMaxNumPredict());
+            item.put("num_ctx", profile.getNumCtx());
+            item.put("max_wall_time_ms", profile.getMaxWallTimeMs());
+            LongAdder exceeded = wallTimeExceeded.get(name);
+            item.put("wall_time_exceeded", exceeded != null ? exceeded.sum() : 0);
+            result.put(name, item);
+        });
+        return result;
+    }
+
+    /**
+     * 生效的生成配置
+     *
+     * @param name 配置名称，未配置生成配置时为null
+     * @param options 生成参数，未配置生成配置时为null
+     * @param maxWallTimeMs 单次请求最长耗时（毫秒），0表示不限制
+     */
+    public record Applied(String name, OllamaRequestDTO.Options options, long maxWallTimeMs) {
+        
+        /**
+         * 阻塞请求使用的读超时（毫秒），0表示不限制
+         */
+        public int timeoutMs() {
+            return (int) Math.min(maxWallTimeMs, Integer.MAX_VALUE);
+        }
+        
+        /**
+         * 影响生成结果的配置标识：配置名称及生效的最大生成token数，同一提示在不同标识下的回答不能互相复用
+         */
+        public String variant() {
+            return name + "/" + (options != null ? options.getNum_predict() : null);
+        }
+    }
+}
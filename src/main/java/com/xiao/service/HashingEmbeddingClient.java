@@ -0,0 +1,40 @@
+package com.xiao.service;
+
+import com.xiao.config.OllamaProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * 本地哈希向量化实现，不依赖向量模型，用于测试和本地调试
+ * 将文本的字符二元组哈希到固定维度（带符号），字面相近的文本得到相近的向量
+ */
+@Component
+@ConditionalOnProperty(prefix = "ollama.semantic-cache", name = "embedding-provider", havingValue = "hashing")
+public class HashingEmbeddingClient implements EmbeddingClient {
+
+    private final int dimensions;
+
+    @Autowired
+    public HashingEmbeddingClient(OllamaProperties ollamaProperties) {
+        this(ollamaProperties.getSemanticCache().getHashingDimensions());
+    }
+
+    public HashingEmbeddingClient(int dimensions) {
+        this.dimensions = dimensions;
+    }
+
+    @Override
+    public float[] embed(String text) {
+        float[] vector = new float[dimensions];
+        String normalized = text.toLowerCase().replaceAll("[\\s\\p{Punct}，。？！、；：]+", " ").trim();
+        for (int i = 0; i + 1 < normalized.length(); i++) {
+            int hash = normalized.charAt(i) * 31 + normalized.charAt(i + 1);
+            hash ^= hash >>> 7;
+            hash *= 0x9E3779B1;
+            int bucket = Math.floorMod(hash, dimensions);
+            vector[bucket] += (hash & 0x10000) == 0 ? 1f : -1f;
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,182 @@
+package com.xiao.service;
+
+import com.alibaba.fastjson.JSON;
+import com.xiao.config.OllamaProperties;
+import com.xiao.dto.OllamaRequestDTO;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 模型预热与keep-alive调度
+ * 1. 启动时及后端加入时预加载配置的模型
+ * 2. 根据各模型最近的访问情况定期发送keep-alive心跳
+ * 3. 长时间未使用的模型主动驱逐，释放显存
+ * 4. 统计请求路径上的load_duration及冷启动次数
+ */
+@Slf4j
+@Service
+public class ModelWarmupService {
+
+    @Resource
+    private OllamaProperties ollamaProperties;
+
+    @Resource
+    private OllamaBackendRegistry backendRegistry;
+
+    private final WebClient webClient = WebClient.builder().build();
+
+    // 各模型的访问统计
+    private final Map<String, ModelTraffic> traffic = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        backendRegistry.addJoinListener(this::preload);
+    }
+
+    /**
+     * 请求路径上调用，记录一次模型访问
+     */
+    public void touch(String model) {
+        ModelTraffic t = traffic(model);
+        t.requests.increment();
+        t.lastUsedMillis = System.currentTimeMillis();
+        t.evicted = false;
+    }
+
+    /**
+     * 请求中应携带的keep_alive时长，优先使用warmup.model-keep-alive中该模型的配置
+     */
+    public String keepAliveFor(String model) {
+        String keepAlive = ollamaProperties.getWarmup().getModelKeepAlive().get(model);
+        return keepAlive != null ? keepAlive : ollamaProperties.getKeepAlive();
+    }
+
+    /**
+     * 记录请求路径上Ollama返回的load_duration
+     *
+     * @param model 模型名称
+     * @param loadDurationNs 加载耗时（纳秒），可为null
+     */
+    public void recordLoadDuration(String model, Long loadDurationNs) {
+        if (model == null || loadDurationNs == null) {
+            return;
+        }
+        ModelTraffic t = traffic(model);
+        t.loadSamples.increment();
+        t.loadNanos.add(loadDurationNs);
+        t.maxLoadNanos.accumulateAndGet(loadDurationNs, Math::max);
+        if (loadDurationNs >= ollamaProperties.getWarmup().getColdThresholdMs() * 1_000_000L) {
+            t.coldStarts.increment();
+            log.warn("模型冷启动: {}, load_duration: {}ms", model, loadDurationNs / 1_000_000L);
+        }
+    }
+
+    /**
+     * 向指定后端预加载所有配置的模型
+     */
+    public void preload(String backend) {
+        for (String model : ollamaProperties.getWarmup().getPreloadModels()) {
+            log.info("预加载模型: {}, 后端: {}", model, backend);
+            sendKeepAlive(backend, model, keepAliveFor(model));
+        }
+    }
+
+    /**
+     * 定期发送keep-alive心跳，并驱逐长时间未使用的模型
+     */
+    @Scheduled(fixedDelayString = "${ollama.warmup.ping-interval-ms:60000}",
+            initialDelayString = "${ollama.warmup.ping-interval-ms:60000}")
+    public void maintain() {
+        long now = System.currentTimeMillis();
+        long evictAfterMs = ollamaProperties.getWarmup().getEvictAfterMs();
+        Set<String> pinned = new HashSet<>(ollamaProperties.getWarmup().getPreloadModels());
+        Set<String> models = new HashSet<>(pinned);
+        models.addAll(traffic.keySet());
+
+        for (String model : models) {
+            ModelTraffic t = traffic(model);
+            boolean recentlyUsed = now - t.lastUsedMillis < evictAfterMs;
+            if (pinned.contains(model) || recentlyUsed) {
+                for (String backend : backendRegistry.healthyBackends()) {
+                    sendKeepAlive(backend, model, keepAliveFor(model));
+                }
+            } else if (!t.evicted) {
+                log.info("模型空闲超过{}ms，主动驱逐: {}", evictAfterMs, model);
+                for (String backend : backendRegistry.healthyBackends()) {
+                    sendKeepAlive(backend, model, "0");
+                }
+                t.evicted = true;
+            }
+        }
+    }
+
+    /**
+     * 获取各模型的预热统计信息
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        traffic.forEach((model, t) -> {
+            long samples = t.loadSamples.sum();
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("requests", t.requests.sum());
+            item.put("cold_starts", t.coldStarts.sum());
+            item.put("avg_load_ms", samples == 0 ? 0 : t.loadNanos.sum() / samples / 1_000_000L);
+            item.put("max_load_ms", t.maxLoadNanos.get() / 1_000_000L);
+            item.put("last_used", t.lastUsedMillis);
+            item.put("evicted", t.evicted);
+            result.put(model, item);
+        });
+        return result;
+    }
+
+    /**
+     * 发送不带prompt的生成请求，Ollama会加载模型并按keep_alive保持驻留，keep_alive为0时卸载模型
+     */
+    private void sendKeepAlive(String backend, String model, String keepAlive) {
+        OllamaRequestDTO request = OllamaRequestDTO.builder()
+                .model(model)
+                .stream(false)
+                .keep_alive(keepAlive)
+                .build();
+        webClient.post()
+                .uri(backend + "/api/generate")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(JSON.toJSONString(request))
+                .retrieve()
+                .bodyToMono(String.class)
+                .subscribe(
+                        body -> log.debug("keep-alive完成, 模型: {}, 后端: {}, keep_alive: {}", model, backend, keepAlive),
+                        error -> log.warn("keep-alive失败, 模型: {}, 后端: {}, 原因: {}", model, backend, error.getMessage())
+                );
+    }
+
+    private ModelTraffic traffic(String model) {
+        return traffic.computeIfAbsent(model, k -> new ModelTraffic());
+    }
+
+    /**
+     * 单个模型的访问统计
+     */
+    private static class ModelTraffic {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder coldStarts = new LongAdder();
+        private final LongAdder loadSamples = new LongAdder();
+        private final LongAdder loadNanos = new LongAdder();
+        private final AtomicLong maxLoadNanos = new AtomicLong();
+        private volatile long lastUsedMillis;
+        private volatile boolean evicted;
+    }
+}
@@ -0,0 +1,110 @@
+package com.xiao.service;
+
+import com.xiao.config.OllamaProperties;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Ollama后端注册表
+ * 定期探测各后端的健康状态，并在后端加入（由不可用变为可用）时通知监听者
+ */
+@Slf4j
+@Component
+public class OllamaBackendRegistry {
+
+    @Resource
+    private OllamaProperties ollamaProperties;
+
+    private final WebClient webClient = WebClient.builder().build();
+
+    // 各后端的健康状态，未探测过的后端不在表中
+    private final Map<String, Boolean> health = new ConcurrentHashMap<>();
+
+    // 后端加入监听者
+    private final List<Consumer<String>> joinListeners = new CopyOnWriteArrayList<>();
+
+    // 轮询游标
+    private final AtomicInteger cursor = new AtomicInteger();
+
+    /**
+     * 注册后端加入监听，参数为后端地址
+     */
+    public void addJoinListener(Consumer<String> listener) {
+        joinListeners.add(listener);
+    }
+
+    /**
+     * 轮询选择一个可用后端，若全部不可用则在全部配置的后端中轮询
+     *
+     * @return 后端地址，例如：http://localhost:11434
+     */
+    public String pick() {
+        List<String> candidates = healthyBackends();
+        if (candidates.isEmpty()) {
+            candidates = ollamaProperties.getBackends();
+        }
+        int index = Math.floorMod(cursor.getAndIncrement(), candidates.size());
+        return candidates.get(index);
+    }
+
+    /**
+     * 获取当前可用的后端列表
+     */
+    public List<String> healthyBackends() {
+        List<String> result = new ArrayList<>();
+        for (String backend : ollamaProperties.getBackends()) {
+            if (Boolean.TRUE.equals(health.get(backend))) {
+                result.add(backend);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 定期探测所有后端，启动后立即执行一次
+     */
+    @Scheduled(fixedDelayString = "${ollama.health-check-interval-ms:10000}")
+    public void probe() {
+        for (String backend : ollamaProperties.getBackends()) {
+            boolean up = ping(backend);
+            Boolean previous = health.put(backend, up);
+            if (up && !Boolean.TRUE.equals(previous)) {
+                log.info("Ollama后端加入: {}", backend);
+                for (Consumer<String> listener : joinListeners) {
+                    try {
+                        listener.accept(backend);
+                    } catch (Exception e) {
+                        log.error("后端加入回调失败: {}", e.getMessage());
+                    }
+                }
+            } else if (!up && Boolean.TRUE.equals(previous)) {
+                log.warn("Ollama后端不可用: {}", backend);
+            }
+        }
+    }
+
+    private boolean ping(String backend) {
+        try {
+            webClient.get()
+                    .uri(backend + "/api/version")
+                    .retrieve()
+                    .toBodilessEntity()
+                    .block(Duration.ofSeconds(2));
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.xiao.service;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.xiao.config.OllamaProperties;
+import com.xiao.utils.HttpUtil;
+import jakarta.annotation.Resource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 基于Ollama /api/embed 的文本向量化实现
+ */
+@Component
+@ConditionalOnProperty(prefix = "ollama.semantic-cache", name = "embedding-provider", havingValue = "ollama", matchIfMissing = true)
+public class OllamaEmbeddingClient implements EmbeddingClient {
+
+    @Resource
+    private HttpUtil httpUtil;
+
+    @Resource
+    private OllamaBackendRegistry backendRegistry;
+
+    @Resource
+    private OllamaProperties ollamaProperties;
+
+    @Override
+    public float[] embed(String text) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("model", ollamaProperties.getSemanticCache().getEmbeddingModel());
+        body.put("input", text);
+
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Content-Type", "application/json");
+
+        String responseJson = httpUtil.doPost(backendRegistry.pick() + "/api/embed", headers, JSON.toJSONString(body));
+        JSONArray embedding = JSONObject.parseObject(responseJson).getJSONArray("embeddings").getJSONArray(0);
+        float[] vector = new float[embedding.size()];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = embedding.getFloatValue(i);
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,260 @@
+package com.xiao.service;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.xiao.config.OllamaProperties;
+import com.xiao.dto.OllamaRequestDTO;
+import com.xiao.dto.OllamaResponseDTO;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 系统提示前缀预热
+ * Ollama的/api/generate对空提示只加载模型、不返回context，处理过的提示返回的context又包含用户轮次和生成的token，
+ * 无法得到只含系统提示的context快照。因此新对话总是通过system字段（/api/chat中为system消息）发送系统提示，
+ * 按模型模板展开后前缀完全相同，Ollama runner从缓存槽中复用最长公共前缀的KV缓存，只需处理新增的部分。
+ * 本服务在后端加入、模板内容或模型（digest）变化时，对每个后端、模板和模型发送一次以系统提示开头、
+ * 会被实际处理的请求（提示为一个空格，只生成1个token），使系统提示前缀预先进入后端的KV缓存。
+ * 模型卸载或缓存槽被其他请求占用后前缀需要重新处理，模型常驻由ModelWarmupService负责
+ */
+@Slf4j
+@Service
+public class PromptPrefixService {
+
+    // 预热请求的提示，不能为空，否则Ollama只加载模型而不处理系统提示
+    static final String WARMUP_PROMPT = " ";
+
+    @Resource
+    private OllamaProperties ollamaProperties;
+
+    @Resource
+    private OllamaBackendRegistry backendRegistry;
+
+    @Resource
+    private ModelWarmupService modelWarmupService;
+
+    private final WebClient webClient = WebClient.builder().build();
+
+    // 预热结果，键为 后端 + 模板名称 + 模型
+    private final Map<String, Warmup> warmups = new ConcurrentHashMap<>();
+
+    // 正在预热的键，避免重复请求
+    private final Set<String> building = ConcurrentHashMap.newKeySet();
+
+    // 各后端上模型最近一次查询到的digest，键为 后端 + 模型
+    private final Map<String, String> digests = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        backendRegistry.addJoinListener(this::warmAll);
+    }
+
+    /**
+     * 获取模板的系统提示文本
+     *
+     * @throws IllegalArgumentException 模板不存在
+     */
+    public String systemText(String template) {
+        return template(template).getSystem();
+    }
+
+    /**
+     * 定期检查各后端的模型digest及模板内容，重新预热变化或缺失的前缀
+     */
+    @Scheduled(fixedDelayString = "${ollama.prompt-prefix.refresh-interval-ms:300000}",
+            initialDelayString = "${ollama.prompt-prefix.refresh-interval-ms:300000}")
+    public void refresh() {
+        if (!ollamaProperties.getPromptPrefix().getTemplates().isEmpty()) {
+            backendRegistry.healthyBackends().forEach(this::warmAll);
+        }
+    }
+
+    /**
+     * 预热统计信息
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        List<Map<String, Object>> items = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (Warmup warmup : warmups.values()) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("backend", warmup.backend());
+            item.put("template", warmup.template());
+            item.put("model", warmup.model());
+            item.put("digest", warmup.digest());
+            item.put("prompt_eval_count", warmup.promptEvalCount());
+            item.put("prompt_eval_ms", warmup.promptEvalNanos() / 1e6);
+            item.put("age_ms", now - warmup.createdAt());
+            items.add(item);
+        }
+        result.put("warmups", items);
+        return result;
+    }
+
+    /**
+     * 预热请求：系统提示加一个空格的提示，只生成1个token
+     * 空提示会被Ollama当作只加载模型的请求，num_predict为0则表示不限制生成长度，都不能使用
+     */
+    static OllamaRequestDTO warmupRequest(String model, String system, String keepAlive) {
+        OllamaRequestDTO.Options options = OllamaRequestDTO.Options.builder()
+                .temperature(0f)
+                .num_predict(1)
+                .build();
+        return OllamaRequestDTO.builder()
+                .model(model)
+                .system(system)
+                .prompt(WARMUP_PROMPT)
+                .stream(false)
+                .options(options)
+                .keep_alive(keepAlive)
+                .build();
+    }
+
+    /**
+     * 在指定后端上查询模型digest，然后预热所有缺失或过期的前缀
+     */
+    private void warmAll(String backend) {
+        Map<String, OllamaProperties.SystemPrompt> templates = ollamaProperties.getPromptPrefix().getTemplates();
+        if (templates.isEmpty()) {
+            return;
+        }
+        fetchDigests(backend)
+                .onErrorResume(e -> {
+                    log.warn("查询模型digest失败, 后端: {}, 原因: {}", backend, e.getMessage());
+                    return Mono.just(Map.of());
+                })
+                .subscribe(latest -> {
+                    latest.forEach((model, digest) -> digests.put(backend + "|" + model, digest));
+                    for (String model : models()) {
+                        templates.forEach((name, prompt) -> {
+                            Warmup warmup = warmups.get(key(backend, name, model));
+                            if (warmup == null || isStale(warmup, prompt)) {
+                                warm(backend, name, model, prompt);
+                            }
+                        });
+                    }
+                });
+    }
+
+    /**
+     * 在后端上处理一次系统提示前缀，记录Ollama返回的提示处理耗时
+     */
+    private void warm(String backend, String template, String model, OllamaProperties.SystemPrompt prompt) {
+        String key = key(backend, template, model);
+        if (!building.add(key)) {
+            return;
+        }
+        String fingerprint = fingerprint(prompt);
+        String digest = digests.get(backend + "|" + normalize(model));
+        OllamaRequestDTO request = warmupRequest(model, prompt.getSystem(), modelWarmupService.keepAliveFor(model));
+        log.info("预热系统提示前缀, 模板: {}, 模型: {}, 后端: {}", template, model, backend);
+        webClient.post()
+                .uri(backend + "/api/generate")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(JSON.toJSONString(request))
+                .retrieve()
+                .bodyToMono(String.class)
+                .doFinally(signal -> building.remove(key))
+                .subscribe(
+                        body -> {
+                            OllamaResponseDTO response = JSON.parseObject(body, OllamaResponseDTO.class);
+                            Integer promptEvalCount = response != null ? response.getPrompt_eval_count() : null;
+                            if (promptEvalCount == null || promptEvalCount == 0) {
+                                log.warn("后端没有处理系统提示前缀, 模板: {}, 模型: {}, 后端: {}", template, model, backend);
+                                return;
+                            }
+                            long evalNanos = response.getPrompt_eval_duration() != null ? response.getPrompt_eval_duration() : 0L;
+                            warmups.put(key, new Warmup(backend, template, model, digest, fingerprint,
+                                    promptEvalCount, evalNanos, System.currentTimeMillis()));
+                            log.info("前缀预热完成, 模板: {}, 模型: {}, 后端: {}, prompt_eval_count: {}, prompt_eval: {}ms",
+                                    template, model, backend, promptEvalCount, evalNanos / 1_000_000);
+                        },
+                        error -> log.warn("预热系统提示前缀失败, 模板: {}, 模型: {}, 后端: {}, 原因: {}",
+                                template, model, backend, error.getMessage())
+                );
+    }
+
+    /**
+     * 查询后端上各模型的digest，模型更新（重新pull）后digest会变化
+     */
+    private Mono<Map<String, String>> fetchDigests(String backend) {
+        return webClient.get()
+                .uri(backend + "/api/tags")
+                .retrieve()
+                .bodyToMono(String.class)
+                .timeout(Duration.ofSeconds(5))
+                .map(body -> {
+                    Map<String, String> result = new HashMap<>();
+                    JSONArray models = JSON.parseObject(body).getJSONArray("models");
+                    if (models != null) {
+                        for (int i = 0; i < models.size(); i++) {
+                            JSONObject model = models.getJSONObject(i);
+                            if (model.getString("name") != null && model.getString("digest") != null) {
+                                result.put(model.getString("name"), model.getString("digest"));
+                            }
+                        }
+                    }
+                    return result;
+                });
+    }
+
+    /**
+     * 模板内容变化，或模型digest与预热时不同，则需要重新预热
+     */
+    private boolean isStale(Warmup warmup, OllamaProperties.SystemPrompt prompt) {
+        if (!warmup.fingerprint().equals(fingerprint(prompt))) {
+            return true;
+        }
+        String current = digests.get(warmup.backend() + "|" + normalize(warmup.model()));
+        return current != null && !current.equals(warmup.digest());
+    }
+
+    private OllamaProperties.SystemPrompt template(String name) {
+        OllamaProperties.SystemPrompt prompt = ollamaProperties.getPromptPrefix().getTemplates().get(name);
+        if (prompt == null || prompt.getSystem() == null) {
+            throw new IllegalArgumentException("未知的系统提示模板: " + name);
+        }
+        return prompt;
+    }
+
+    private List<String> models() {
+        List<String> models = ollamaProperties.getPromptPrefix().getModels();
+        return models.isEmpty() ? ollamaProperties.getWarmup().getPreloadModels() : models;
+    }
+
+    private static String fingerprint(OllamaProperties.SystemPrompt prompt) {
+        return prompt.getSystem();
+    }
+
+    private static String key(String backend, String template, String model) {
+        return backend + "|" + template + "|" + model;
+    }
+
+    // /api/tags中的模型名称总是带标签，未指定标签时为latest
+    private static String normalize(String model) {
+        return model.contains(":") ? model : model + ":latest";
+    }
+
+    /**
+     * 一次前缀预热的结果
+     */
+    public record Warmup(String backend, String template, String model, String digest, String fingerprint,
+                         Integer promptEvalCount, long promptEvalNanos, long createdAt) {
+    }
+}
@@ -0,0 +1,142 @@
+package com.xiao.service;
+
+import com.xiao.config.OllamaProperties;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 语义响应缓存
+ * 对提示文本做向量化，在同一模型及生成配置下查找相似度超过阈值的历史提示并直接返回其回答，
+ * 使换一种说法的重复问题也能命中缓存；只缓存不带上下文的请求。
+ * 回答与生成时返回的context一起缓存，命中时返回缓存的context，客户端可以在此基础上继续对话
+ */
+@Slf4j
+@Service
+public class SemanticCacheService {
+
+    @Resource
+    private OllamaProperties ollamaProperties;
+
+    @Resource
+    private EmbeddingClient embeddingClient;
+
+    // 每个模型及生成配置一个向量索引
+    private final Map<String, VectorIndex<CachedAnswer>> indexes = new ConcurrentHashMap<>();
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder savedGpuNanos = new LongAdder();
+    private final LongAdder embedNanos = new LongAdder();
+    private final LongAdder searchNanos = new LongAdder();
+
+    /**
+     * 查询缓存
+     *
+     * @param model 模型名称
+     * @param variant 生成配置标识（见GenerationProfileService.Applied.variant），不同配置生成的回答分开缓存
+     * @param prompt 提示文本
+     * @return 查询结果，包含提示向量（未命中时用于写入缓存）；未启用或向量化失败时返回null
+     */
+    public Lookup lookup(String model, String variant, String prompt) {
+        if (!ollamaProperties.getSemanticCache().isEnabled() || model == null || prompt == null || prompt.isBlank()) {
+            return null;
+        }
+        float[] vector;
+        long start = System.nanoTime();
+        try {
+            vector = VectorIndex.normalize(embeddingClient.embed(prompt));
+        } catch (Exception e) {
+            log.warn("提示向量化失败，跳过语义缓存: {}", e.getMessage());
+            return null;
+        }
+        long embedded = System.nanoTime();
+        embedNanos.add(embedded - start);
+
+        String key = model + "|" + variant;
+        VectorIndex<CachedAnswer> index = indexes.get(key);
+        VectorIndex.Match<CachedAnswer> match = index != null
+                ? index.nearest(vector, ollamaProperties.getSemanticCache().getSimilarityThreshold())
+                : null;
+        searchNanos.add(System.nanoTime() - embedded);
+        lookups.increment();
+
+        if (match == null) {
+            return new Lookup(key, vector, null, 0f);
+        }
+        hits.increment();
+        savedGpuNanos.add(match.value().gpuNanos());
+        log.info("语义缓存命中，模型: {}, 生成配置: {}, 相似度: {}", model, variant, match.similarity());
+        return new Lookup(key, vector, match.value(), match.similarity());
+    }
+
+    /**
+     * 写入缓存，写入查询时的模型及生成配置对应的索引
+     *
+     * @param lookup 查询时返回的结果
+     * @param prompt 提示文本
+     * @param answer 模型回答
+     * @param context 生成该回答后Ollama返回的上下文，没有上下文的回答不缓存，否则命中后无法继续对话
+     * @param gpuNanos 生成该回答消耗的时间（纳秒），命中时累计为节省的GPU时间
+     */
+    public void put(Lookup lookup, String prompt, String answer, List<Integer> context, long gpuNanos) {
+        if (lookup == null || lookup.hit() != null || answer == null || answer.isEmpty()
+                || context == null || context.isEmpty()) {
+            return;
+        }
+        int dimensions = lookup.vector().length;
+        VectorIndex<CachedAnswer> index = indexes.computeIfAbsent(lookup.key(),
+                k -> new VectorIndex<>(ollamaProperties.getSemanticCache().getCapacityPerModel(), dimensions));
+        if (index.dimensions() != dimensions) {
+            log.warn("向量维度变化，重建{}的语义缓存: {} -> {}", lookup.key(), index.dimensions(), dimensions);
+            index = new VectorIndex<>(ollamaProperties.getSemanticCache().getCapacityPerModel(), dimensions);
+            indexes.put(lookup.key(), index);
+        }
+        index.add(lookup.vector(), new CachedAnswer(prompt, answer, List.copyOf(context), gpuNanos));
+    }
+
+    /**
+     * 语义缓存统计信息
+     */
+    public Map<String, Object> stats() {
+        long lookupCount = lookups.sum();
+        long hitCount = hits.sum();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", ollamaProperties.getSemanticCache().isEnabled());
+        result.put("lookups", lookupCount);
+        result.put("hits", hitCount);
+        result.put("hit_rate", lookupCount == 0 ? 0 : (double) hitCount / lookupCount);
+        result.put("saved_gpu_seconds", savedGpuNanos.sum() / 1e9);
+        result.put("avg_embed_ms", lookupCount == 0 ? 0 : embedNanos.sum() / 1e6 / lookupCount);
+        result.put("avg_search_ms", lookupCount == 0 ? 0 : searchNanos.sum() / 1e6 / lookupCount);
+        Map<String, Integer> sizes = new LinkedHashMap<>();
+        indexes.forEach((key, index) -> sizes.put(key, index.size()));
+        result.put("entries", sizes);
+        return result;
+    }
+
+    /**
+     * 查询结果
+     *
+     * @param key 索引键：模型及生成配置
+     * @param vector 已归一化的提示向量
+     * @param hit 命中的缓存回答，未命中为null
+     * @param similarity 命中时的相似度
+     */
+    public record Lookup(String key, float[] vector, CachedAnswer hit, float similarity) {
+    }
+
+    /**
+     * 缓存的回答
+     *
+     * @param context 生成该回答后的上下文
+     */
+    public record CachedAnswer(String prompt, String answer, List<Integer> context, long gpuNanos) {
+    }
+}
@@ -0,0 +1,335 @@
+package com.xiao.service;
+
+import com.alibaba.fastjson.JSON;
+import com.xiao.config.OllamaProperties;
+import com.xiao.domain.TokenUsage;
+import com.xiao.mapper.TokenUsageMapper;
+import com.xiao.utils.TokenUsageCounters;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * token用量计量服务
+ * 请求结束时按用户、模型累加到内存计数器，请求路径上没有锁和IO；
+ * 定期把增量作为一个批次先写入本地批次文件，再以多行upsert写入MySQL，
+ * 同一事务中登记批次ID。进程崩溃或数据库不可用时批次文件保留，之后重试，
+ * 已登记的批次直接跳过，因此重放不会重复计数
+ */
+@Slf4j
+@Service
+public class TokenUsageService {
+
+    public static final String ANONYMOUS = "anonymous";
+
+    public static final String PERIOD_DAY = "day";
+    public static final String PERIOD_MONTH = "month";
+
+    private static final String BATCH_SUFFIX = ".json";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    // 与token_usage表的列宽一致
+    private static final int MAX_USER_LENGTH = 64;
+    private static final int MAX_MODEL_LENGTH = 128;
+
+    @Resource
+    private OllamaProperties ollamaProperties;
+
+    @Resource
+    private TokenUsageMapper tokenUsageMapper;
+
+    @Resource
+    private TransactionTemplate transactionTemplate;
+
+    private final TokenUsageCounters counters = new TokenUsageCounters();
+
+    // 已落盘、尚未写入数据库的批次，按生成顺序重试
+    private final Map<String, List<TokenUsage>> pending = new LinkedHashMap<>();
+
+    private final LongAdder recorded = new LongAdder();
+    private volatile long writtenBatches;
+    private volatile long writtenRows;
+    private volatile String lastError;
+
+    @PostConstruct
+    public void init() {
+        if (!isEnabled()) {
+            return;
+        }
+        Path dir = Paths.get(ollamaProperties.getUsage().getDir());
+        try {
+            Files.createDirectories(dir);
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    if (name.endsWith(TEMP_SUFFIX)) {
+                        // 落盘未完成的批次没有从计数器中确认取出，崩溃时已随进程丢失
+                        Files.deleteIfExists(file);
+                    } else if (name.endsWith(BATCH_SUFFIX)) {
+                        List<TokenUsage> rows = JSON.parseArray(Files.readString(file), TokenUsage.class);
+                        pending.put(name.substring(0, name.length() - BATCH_SUFFIX.length()), rows);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.error("读取待写入用量批次失败: {}", e.getMessage());
+        }
+        if (!pending.isEmpty()) {
+            log.info("发现{}个待写入的用量批次，将在下次写入时重试", pending.size());
+        }
+    }
+
+    public boolean isEnabled() {
+        return ollamaProperties.getUsage().isEnabled();
+    }
+
+    /**
+     * 当前请求的用户，取自配置的用户请求头（需由可信的前置代理设置），只能在处理请求的线程中调用
+     */
+    public String currentUser() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes instanceof ServletRequestAttributes servlet) {
+            String user = servlet.getRequest().getHeader(ollamaProperties.getUsage().getUserHeader());
+            if (user != null && !user.isBlank()) {
+                return truncate(user.trim(), MAX_USER_LENGTH);
+            }
+        }
+        return ANONYMOUS;
+    }
+
+    /**
+     * 记录一次生成请求的用量
+     *
+     * @param promptTokens 输入token数，为null时计0
+     * @param completionTokens 输出token数，为null时计0
+     */
+    public void record(String user, String model, Number promptTokens, Number completionTokens) {
+        if (!isEnabled()) {
+            return;
+        }
+        counters.add(user != null ? user : ANONYMOUS,
+                model != null ? truncate(model, MAX_MODEL_LENGTH) : "unknown",
+                LocalDate.now(),
+                promptTokens != null ? promptTokens.longValue() : 0L,
+                completionTokens != null ? completionTokens.longValue() : 0L);
+        recorded.increment();
+    }
+
+    /**
+     * 定期把内存中的增量写入数据库
+     */
+    @Scheduled(fixedDelayString = "${ollama.usage.flush-interval-ms:10000}")
+    public void scheduledFlush() {
+        if (isEnabled()) {
+            flush();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (isEnabled()) {
+            flush();
+        }
+    }
+
+    /**
+     * 取出计数器中的增量作为新批次落盘，然后按顺序写入所有待写入批次，
+     * 数据库写入失败时停止，剩余批次下次重试
+     */
+    public synchronized void flush() {
+        List<TokenUsage> rows = counters.drain(LocalDate.now());
+        if (!rows.isEmpty()) {
+            String batchId = UUID.randomUUID().toString().replace("-", "");
+            try {
+                writeBatchFile(batchId, rows);
+            } catch (IOException e) {
+                // 仍保留在内存中重试，只是进程崩溃时会丢失
+                log.error("用量批次落盘失败: {}, {}", batchId, e.getMessage());
+            }
+            pending.put(batchId, rows);
+        }
+        Iterator<Map.Entry<String, List<TokenUsage>>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, List<TokenUsage>> batch = it.next();
+            try {
+                apply(batch.getKey(), batch.getValue());
+            } catch (RuntimeException e) {
+                lastError = e.getMessage();
+                log.warn("用量写入数据库失败，待写入批次: {}, 原因: {}", pending.size(), e.getMessage());
+                return;
+            }
+            it.remove();
+            deleteBatchFile(batch.getKey());
+        }
+        lastError = null;
+    }
+
+    /**
+     * 在一个事务中登记批次并累加用量，批次已登记过时不做任何修改
+     */
+    private void apply(String batchId, List<TokenUsage> rows) {
+        int batchSize = Math.max(1, ollamaProperties.getUsage().getBatchSize());
+        boolean written = Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+            if (tokenUsageMapper.insertBatchMark(batchId, rows.size()) == 0) {
+                return false;
+            }
+            for (int from = 0; from < rows.size(); from += batchSize) {
+                tokenUsageMapper.upsertBatch(rows.subList(from, Math.min(rows.size(), from + batchSize)));
+            }
+            return true;
+        }));
+        if (written) {
+            writtenBatches++;
+            writtenRows += rows.size();
+            log.debug("用量批次已写入: {}, 行数: {}", batchId, rows.size());
+        } else {
+            log.info("用量批次已写入过，跳过: {}", batchId);
+        }
+    }
+
+    /**
+     * 先写临时文件并同步到磁盘，再原子改名，重启时看到的批次文件都是完整的
+     */
+    private void writeBatchFile(String batchId, List<TokenUsage> rows) throws IOException {
+        Path dir = Paths.get(ollamaProperties.getUsage().getDir());
+        Files.createDirectories(dir);
+        Path temp = dir.resolve(batchId + TEMP_SUFFIX);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(JSON.toJSONBytes(rows));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, dir.resolve(batchId + BATCH_SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void deleteBatchFile(String batchId) {
+        try {
+            Files.deleteIfExists(Paths.get(ollamaProperties.getUsage().getDir(), batchId + BATCH_SUFFIX));
+        } catch (IOException e) {
+            // 批次已登记，重启后重放时会被跳过
+            log.warn("删除用量批次文件失败: {}, {}", batchId, e.getMessage());
+        }
+    }
+
+    /**
+     * 定期清理过期的批次登记
+     */
+    @Scheduled(fixedDelay = 3600000)
+    public void purgeBatchMarks() {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            int deleted = tokenUsageMapper.deleteBatchMarksBefore(
+                    LocalDateTime.now().minusDays(ollamaProperties.getUsage().getBatchRetentionDays()));
+            if (deleted > 0) {
+                log.info("清理过期用量批次登记: {}", deleted);
+            }
+        } catch (RuntimeException e) {
+            log.warn("清理用量批次登记失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 查询用户本周期的用量：数据库中已写入的部分，加上本节点待写入批次和内存计数器中的增量
+     *
+     * @param model 模型，为null时返回全部模型
+     */
+    public Map<String, Object> usage(String user, String model) {
+        String period = ollamaProperties.getUsage().getPeriod();
+        LocalDate today = LocalDate.now();
+        LocalDate from = PERIOD_DAY.equals(period) ? today : today.withDayOfMonth(1);
+
+        Map<String, TokenUsage> byModel = new LinkedHashMap<>();
+        for (TokenUsage row : tokenUsageMapper.sumByUser(user, model, from)) {
+            TokenUsageCounters.merge(byModel, row);
+        }
+        synchronized (this) {
+            for (List<TokenUsage> rows : pending.values()) {
+                for (TokenUsage row : rows) {
+                    if (row.getUserId().equals(user) && !row.getUsageDate().isBefore(from)
+                            && (model == null || model.equals(row.getModel()))) {
+                        TokenUsageCounters.merge(byModel, row);
+                    }
+                }
+            }
+        }
+        counters.undrained(user, model, from).values().forEach(row -> TokenUsageCounters.merge(byModel, row));
+
+        List<Map<String, Object>> models = new ArrayList<>();
+        long requests = 0;
+        long promptTokens = 0;
+        long completionTokens = 0;
+        for (TokenUsage row : byModel.values()) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("model", row.getModel());
+            item.put("requests", row.getRequests());
+            item.put("prompt_tokens", row.getPromptTokens());
+            item.put("completion_tokens", row.getCompletionTokens());
+            item.put("total_tokens", row.getPromptTokens() + row.getCompletionTokens());
+            models.add(item);
+            requests += row.getRequests();
+            promptTokens += row.getPromptTokens();
+            completionTokens += row.getCompletionTokens();
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("user", user);
+        result.put("period", period);
+        result.put("from", from.toString());
+        result.put("requests", requests);
+        result.put("prompt_tokens", promptTokens);
+        result.put("completion_tokens", completionTokens);
+        result.put("total_tokens", promptTokens + completionTokens);
+        result.put("models", models);
+        return result;
+    }
+
+    /**
+     * 计量统计
+     */
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", isEnabled());
+        stats.put("recorded", recorded.sum());
+        stats.put("counters", counters.size());
+        stats.put("pending_batches", pending.size());
+        stats.put("written_batches", writtenBatches);
+        stats.put("written_rows", writtenRows);
+        stats.put("last_error", lastError);
+        return stats;
+    }
+
+    private static String truncate(String value, int maxLength) {
+        return value.length() > maxLength ? value.substring(0, maxLength) : value;
+    }
+}
@@ -0,0 +1,223 @@
+package com.xiao.service;
+
+import com.alibaba.fastjson.JSON;
+import com.xiao.capture.CaptureRecord;
+import com.xiao.config.OllamaProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 流量采集服务
+ * 记录每个请求的开始时间、模型、提示长度、首字耗时、总耗时及输出长度，写入gzip压缩的NDJSON文件，
+ * 供ReplayTool按原始时间间隔回放；开启脱敏时不记录提示原文
+ */
+@Slf4j
+@Service
+public class TrafficCaptureService {
+
+    @Resource
+    private OllamaProperties ollamaProperties;
+
+    private final LongAdder captured = new LongAdder();
+
+    private BufferedWriter writer;
+    private volatile Path file;
+    private volatile long baseNanos;
+
+    // 采集会话编号，每次start加一；之前会话中开始的请求结束时不再写入，其偏移时间基于旧的baseNanos
+    private volatile long session;
+
+    // 采集开关，未开启时begin返回空操作的句柄
+    private volatile boolean capturing;
+
+    @PostConstruct
+    public void init() {
+        if (ollamaProperties.getCapture().isEnabled()) {
+            start();
+        }
+    }
+
+    /**
+     * 开始采集到新文件，已在采集时直接返回当前文件
+     *
+     * @return 采集文件路径，打开失败时返回null
+     */
+    public synchronized Path start() {
+        if (capturing) {
+            return file;
+        }
+        try {
+            Path dir = Paths.get(ollamaProperties.getCapture().getDir());
+            Files.createDirectories(dir);
+            file = dir.resolve("capture-" + System.currentTimeMillis() + ".ndjson.gz");
+            writer = new BufferedWriter(new OutputStreamWriter(
+                    new GZIPOutputStream(Files.newOutputStream(file), 8192, true), StandardCharsets.UTF_8));
+            baseNanos = System.nanoTime();
+            session++;
+            capturing = true;
+            log.info("开始流量采集: {}, 脱敏: {}", file, ollamaProperties.getCapture().isRedact());
+            return file;
+        } catch (IOException e) {
+            log.error("打开流量采集文件失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 停止采集并关闭文件
+     *
+     * @return 采集文件路径，未在采集时返回null
+     */
+    public synchronized Path stop() {
+        if (!capturing) {
+            return null;
+        }
+        capturing = false;
+        try {
+            writer.close();
+        } catch (IOException e) {
+            log.warn("关闭流量采集文件失败: {}", e.getMessage());
+        }
+        log.info("停止流量采集: {}, 记录数: {}", file, captured.sum());
+        return file;
+    }
+
+    @PreDestroy
+    public void close() {
+        stop();
+    }
+
+    /**
+     * 定期刷新缓冲区，使正在采集的文件可以被读取
+     */
+    @Scheduled(fixedDelay = 1000)
+    public synchronized void flush() {
+        if (capturing) {
+            try {
+                writer.flush();
+            } catch (IOException e) {
+                log.warn("刷新流量采集文件失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 记录一个请求的开始
+     *
+     * @return 采集句柄，请求结束时调用finish；未开启采集时返回空操作的句柄
+     */
+    public Capture begin(String endpoint, String model, String prompt, int contextSize, String profile) {
+        if (!capturing) {
+            return Capture.DISABLED;
+        }
+        // 先读会话编号再读baseNanos，读到的baseNanos不早于该会话开始时的值
+        long currentSession = session;
+        CaptureRecord record = new CaptureRecord();
+        record.setOffsetMs((System.nanoTime() - baseNanos) / 1_000_000);
+        record.setEndpoint(endpoint);
+        record.setModel(model);
+        record.setProfile(profile);
+        record.setPromptLength(prompt != null ? prompt.length() : 0);
+        if (!ollamaProperties.getCapture().isRedact()) {
+            record.setPrompt(prompt);
+        }
+        record.setContextSize(contextSize);
+        return new Capture(this, record, currentSession);
+    }
+
+    /**
+     * 采集状态
+     */
+    public Map<String, Object> status() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("capturing", capturing);
+        result.put("file", file != null ? file.toString() : null);
+        result.put("captured", captured.sum());
+        result.put("redact", ollamaProperties.getCapture().isRedact());
+        return result;
+    }
+
+    private synchronized void write(CaptureRecord record, long recordSession) {
+        if (!capturing || recordSession != session) {
+            return;
+        }
+        try {
+            writer.write(JSON.toJSONString(record));
+            writer.newLine();
+            captured.increment();
+        } catch (IOException e) {
+            log.error("写入流量采集文件失败，停止采集: {}", e.getMessage());
+            stop();
+        }
+    }
+
+    /**
+     * 单个请求的采集句柄
+     */
+    public static class Capture {
+
+        static final Capture DISABLED = new Capture(null, null, 0L);
+
+        private final TrafficCaptureService service;
+        private final CaptureRecord record;
+        private final long session;
+        private final long startNanos = System.nanoTime();
+        private final AtomicInteger outputChars = new AtomicInteger();
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private volatile long firstOutputNanos;
+
+        Capture(TrafficCaptureService service, CaptureRecord record, long session) {
+            this.service = service;
+            this.record = record;
+            this.session = session;
+        }
+
+        /**
+         * 记录一段输出，第一次调用时记录首字耗时
+         */
+        public void output(int chars) {
+            if (service == null) {
+                return;
+            }
+            if (firstOutputNanos == 0) {
+                firstOutputNanos = System.nanoTime();
+            }
+            outputChars.addAndGet(chars);
+        }
+
+        /**
+         * 请求结束，只有第一次调用生效
+         *
+         * @param status 结果：ok、cached、truncated、error、cancelled
+         */
+        public void finish(String status) {
+            if (service == null || !finished.compareAndSet(false, true)) {
+                return;
+            }
+            long now = System.nanoTime();
+            record.setStatus(status);
+            record.setDurationMs((now - startNanos) / 1_000_000);
+            record.setTtftMs(((firstOutputNanos != 0 ? firstOutputNanos : now) - startNanos) / 1_000_000);
+            record.setOutputChars(outputChars.get());
+            service.write(record, session);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.xiao.service;
+
+import com.alibaba.fastjson.JSON;
+import com.xiao.config.OllamaProperties;
+import com.xiao.journal.JournalRecord;
+import com.xiao.journal.TranscriptJournal;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 转录日志服务
+ * 将请求、流式token、最终响应及错误写入内存映射的只追加日志，取代在业务日志中打印完整提示文本；
+ * 写入路径只有一次内存拷贝，不阻塞请求线程。未启用时所有方法均为空操作
+ */
+@Slf4j
+@Service
+public class TranscriptJournalService {
+
+    @Resource
+    private OllamaProperties ollamaProperties;
+
+    private final AtomicLong requestIds = new AtomicLong(System.currentTimeMillis() << 16);
+
+    private volatile TranscriptJournal journal;
+
+    @PostConstruct
+    public void init() {
+        OllamaProperties.Journal config = ollamaProperties.getJournal();
+        if (!config.isEnabled()) {
+            return;
+        }
+        // 段文件整体映射到内存，大小不能超过int范围
+        long segmentSize = config.getSegmentSizeMb() * 1024L * 1024L;
+        if (segmentSize <= 0 || segmentSize > Integer.MAX_VALUE) {
+            log.error("转录日志段文件大小应在1~2047MB之间，不记录转录: {}MB", config.getSegmentSizeMb());
+            return;
+        }
+        try {
+            journal = new TranscriptJournal(Paths.get(config.getDir()),
+                    (int) segmentSize, config.getRollIntervalMs());
+            log.info("转录日志已启用，目录: {}", config.getDir());
+        } catch (IOException e) {
+            log.error("转录日志初始化失败，不记录转录: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        TranscriptJournal current = journal;
+        journal = null;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    /**
+     * 定期滚动段文件并关闭已写完的旧段
+     */
+    @Scheduled(fixedDelay = 1000)
+    public void maintain() {
+        TranscriptJournal current = journal;
+        if (current != null) {
+            current.maintain();
+        }
+    }
+
+    /**
+     * 记录请求
+     *
+     * @param endpoint 接口名称
+     * @param model 模型名称
+     * @param prompt 提示文本
+     * @param contextSize 上下文token数
+     * @return 请求ID，用于关联后续记录；未启用时返回0
+     */
+    public long begin(String endpoint, String model, String prompt, int contextSize) {
+        TranscriptJournal current = journal;
+        if (current == null) {
+            return 0;
+        }
+        long requestId = requestIds.incrementAndGet();
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("endpoint", endpoint);
+        payload.put("prompt", prompt);
+        payload.put("context_size", contextSize);
+        current.append(JournalRecord.TYPE_REQUEST, requestId, model, JSON.toJSONString(payload));
+        return requestId;
+    }
+
+    /**
+     * 记录流式输出的一段文本
+     */
+    public void token(long requestId, String text) {
+        TranscriptJournal current = journal;
+        if (current != null && requestId != 0) {
+            current.append(JournalRecord.TYPE_TOKEN, requestId, null, text);
+        }
+    }
+
+    /**
+     * 记录最终响应
+     */
+    public void complete(long requestId, Map<String, Object> response) {
+        TranscriptJournal current = journal;
+        if (current != null && requestId != 0) {
+            current.append(JournalRecord.TYPE_RESPONSE, requestId, null, JSON.toJSONString(response));
+        }
+    }
+
+    /**
+     * 记录错误
+     */
+    public void error(long requestId, String message) {
+        TranscriptJournal current = journal;
+        if (current != null && requestId != 0) {
+            current.append(JournalRecord.TYPE_ERROR, requestId, null, message);
+        }
+    }
+
+    /**
+     * 转录日志统计信息
+     */
+    public Map<String, Object> stats() {
+        TranscriptJournal current = journal;
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", current != null);
+        if (current != null) {
+            result.put("appended", current.appendedCount());
+            result.put("dropped", current.droppedCount());
+            result.put("segment", current.currentSegment().toString());
+        }
+        return result;
+    }
+}
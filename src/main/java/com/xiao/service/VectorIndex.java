@@ -0,0 +1,139 @@
+package com.xiao.service;
+
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 容量有限的向量相似度索引
+ * 向量连续存放在一个float数组中，查询时顺序扫描计算点积（要求向量已归一化，点积即余弦相似度），
+ * 数千条、数百维的规模下单次查询在亚毫秒级；容量满后按CLOCK（二次机会）算法淘汰最近未命中的条目
+ *
+ * @param <T> 条目关联的值类型
+ */
+public class VectorIndex<T> {
+
+    private final int capacity;
+    private final int dimensions;
+    private final float[] vectors;
+    private final Object[] values;
+    private final boolean[] referenced;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private int size;
+    private int hand;
+
+    public VectorIndex(int capacity, int dimensions) {
+        if (capacity <= 0 || dimensions <= 0) {
+            throw new IllegalArgumentException("capacity和dimensions必须大于0");
+        }
+        this.capacity = capacity;
+        this.dimensions = dimensions;
+        this.vectors = new float[capacity * dimensions];
+        this.values = new Object[capacity];
+        this.referenced = new boolean[capacity];
+    }
+
+    public int dimensions() {
+        return dimensions;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 查找与query最相似且相似度不低于minSimilarity的条目
+     *
+     * @param query 已归一化的查询向量
+     * @param minSimilarity 最低相似度
+     * @return 命中的条目，未命中返回null
+     */
+    @SuppressWarnings("unchecked")
+    public Match<T> nearest(float[] query, float minSimilarity) {
+        if (query.length != dimensions) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            int best = -1;
+            float bestScore = minSimilarity;
+            for (int slot = 0; slot < size; slot++) {
+                int base = slot * dimensions;
+                float dot = 0f;
+                for (int d = 0; d < dimensions; d++) {
+                    dot += vectors[base + d] * query[d];
+                }
+                if (dot >= bestScore) {
+                    bestScore = dot;
+                    best = slot;
+                }
+            }
+            if (best < 0) {
+                return null;
+            }
+            // 读锁下并发写入同一个布尔值是无害的
+            referenced[best] = true;
+            return new Match<>((T) values[best], bestScore);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 添加条目，容量已满时淘汰一个条目
+     *
+     * @param vector 已归一化的向量
+     * @param value 关联的值
+     */
+    public void add(float[] vector, T value) {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("向量维度不匹配: " + vector.length + " != " + dimensions);
+        }
+        lock.writeLock().lock();
+        try {
+            int slot = size < capacity ? size++ : victim();
+            System.arraycopy(vector, 0, vectors, slot * dimensions, dimensions);
+            values[slot] = value;
+            referenced[slot] = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 将向量就地归一化为单位长度，零向量保持不变
+     */
+    public static float[] normalize(float[] vector) {
+        double sum = 0;
+        for (float v : vector) {
+            sum += v * v;
+        }
+        if (sum > 0) {
+            float inv = (float) (1.0 / Math.sqrt(sum));
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] *= inv;
+            }
+        }
+        return vector;
+    }
+
+    // CLOCK淘汰：跳过并清除最近命中过的条目，选中第一个未命中的条目
+    private int victim() {
+        while (referenced[hand]) {
+            referenced[hand] = false;
+            hand = (hand + 1) % capacity;
+        }
+        int slot = hand;
+        hand = (hand + 1) % capacity;
+        return slot;
+    }
+
+    /**
+     * 查询结果
+     */
+    public record Match<V>(V value, float similarity) {
+    }
+}
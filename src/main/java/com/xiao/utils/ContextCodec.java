@@ -0,0 +1,165 @@
+package com.xiao.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.util.AbstractList;
+import java.util.Base64;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.zip.CRC32;
+
+/**
+ * 对话上下文紧凑编码工具类
+ * 将context token数组编码为：版本号(1字节) + token数(varint) + 相邻token差值(zigzag varint) + CRC32(4字节)，
+ * 再做base64url编码（无填充）。相邻token差值通常仍较大，多数占2~3字节，
+ * 编码结果约为JSON整数数组的60%（约小40%），解码直接得到int[]
+ */
+public final class ContextCodec {
+
+    /**
+     * 紧凑格式名称，用于与前端协商
+     */
+    public static final String FORMAT_COMPACT = "compact";
+
+    private static final int VERSION = 1;
+
+    private ContextCodec() {
+    }
+
+    /**
+     * 编码上下文
+     *
+     * @param context token列表
+     * @return base64url字符串，context为null时返回null
+     */
+    public static String encode(List<Integer> context) {
+        if (context == null) {
+            return null;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(context.size() * 2 + 16);
+        out.write(VERSION);
+        writeVarint(out, context.size());
+        int previous = 0;
+        for (int i = 0; i < context.size(); i++) {
+            int token = context.get(i);
+            int delta = token - previous;
+            // zigzag编码，使小的负差值也只占很少的字节
+            writeVarint(out, (delta << 1) ^ (delta >> 31));
+            previous = token;
+        }
+        CRC32 crc = new CRC32();
+        byte[] payload = out.toByteArray();
+        crc.update(payload, 0, payload.length);
+        long checksum = crc.getValue();
+        out.write((int) (checksum >>> 24));
+        out.write((int) (checksum >>> 16));
+        out.write((int) (checksum >>> 8));
+        out.write((int) checksum);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(out.toByteArray());
+    }
+
+    /**
+     * 解码上下文
+     *
+     * @param encoded base64url字符串
+     * @return token数组，encoded为null或空串时返回null
+     * @throws IllegalArgumentException 格式错误或校验和不匹配
+     */
+    public static int[] decode(String encoded) {
+        if (encoded == null || encoded.isEmpty()) {
+            return null;
+        }
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(encoded);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("上下文不是合法的base64url编码", e);
+        }
+        if (bytes.length < 6) {
+            throw new IllegalArgumentException("上下文长度不足");
+        }
+        int payloadLength = bytes.length - 4;
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, payloadLength);
+        long expected = ((bytes[payloadLength] & 0xFFL) << 24)
+                | ((bytes[payloadLength + 1] & 0xFFL) << 16)
+                | ((bytes[payloadLength + 2] & 0xFFL) << 8)
+                | (bytes[payloadLength + 3] & 0xFFL);
+        if (crc.getValue() != expected) {
+            throw new IllegalArgumentException("上下文校验和不匹配");
+        }
+        if (bytes[0] != VERSION) {
+            throw new IllegalArgumentException("不支持的上下文版本: " + bytes[0]);
+        }
+
+        int[] position = {1};
+        int count = readVarint(bytes, position, payloadLength);
+        if (count < 0 || count > payloadLength) {
+            throw new IllegalArgumentException("上下文token数非法: " + count);
+        }
+        int[] tokens = new int[count];
+        int previous = 0;
+        for (int i = 0; i < count; i++) {
+            int zigzag = readVarint(bytes, position, payloadLength);
+            previous += (zigzag >>> 1) ^ -(zigzag & 1);
+            tokens[i] = previous;
+        }
+        if (position[0] != payloadLength) {
+            throw new IllegalArgumentException("上下文存在多余数据");
+        }
+        return tokens;
+    }
+
+    /**
+     * 将int数组包装为只读List，不逐个装箱复制
+     */
+    public static List<Integer> asList(int[] tokens) {
+        if (tokens == null) {
+            return null;
+        }
+        return new IntArrayList(tokens);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(byte[] bytes, int[] position, int limit) {
+        int result = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (position[0] >= limit) {
+                throw new IllegalArgumentException("上下文数据被截断");
+            }
+            byte b = bytes[position[0]++];
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("varint过长");
+    }
+
+    /**
+     * 基于int数组的只读List
+     */
+    private static final class IntArrayList extends AbstractList<Integer> implements RandomAccess {
+        private final int[] tokens;
+
+        private IntArrayList(int[] tokens) {
+            this.tokens = tokens;
+        }
+
+        @Override
+        public Integer get(int index) {
+            return tokens[index];
+        }
+
+        @Override
+        public int size() {
+            return tokens.length;
+        }
+    }
+}
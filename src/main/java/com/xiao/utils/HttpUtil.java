@@ -1,20 +1,34 @@
 package com.xiao.utils;
 
+import com.xiao.jfr.BackendCallEvent;
+import com.xiao.jfr.RequestIds;
 import jakarta.annotation.Resource;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.BasicHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
 import org.apache.http.util.EntityUtils;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
 import java.net.URI;
 import java.util.Map;
 
@@ -31,6 +45,16 @@ public class HttpUtil {
     @Resource
     CloseableHttpClient httpClient;
 
+    // 建立连接耗时（纳秒）在请求上下文中的属性名
+    private static final String CONNECT_NANOS = "com.xiao.connect.nanos";
+
+    // 记录建立连接耗时的套接字工厂，doPost每次调用使用独立的连接管理器
+    private static final Registry<ConnectionSocketFactory> TIMED_SOCKET_FACTORIES =
+            RegistryBuilder.<ConnectionSocketFactory>create()
+                    .register("http", new TimedSocketFactory(PlainConnectionSocketFactory.getSocketFactory()))
+                    .register("https", new TimedSocketFactory(SSLConnectionSocketFactory.getSocketFactory()))
+                    .build();
+
     /**
      * 发送GET请求
      *
@@ -89,8 +113,37 @@ public class HttpUtil {
      * @return 响应字符串
      */
     public String doPost(String url, Map<String, String> headers, String requestBody) {
-        try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
+        return doPost(url, headers, requestBody, 0);
+    }
+
+    /**
+     * 发送POST请求，并限制等待响应的时长
+     *
+     * @param url 请求URL
+     * @param headers 请求头
+     * @param requestBody 请求体
+     * @param timeoutMs 读超时（毫秒），超时后断开连接并抛出异常，0表示不限制
+     * @return 响应字符串
+     */
+    public String doPost(String url, Map<String, String> headers, String requestBody, int timeoutMs) {
+        // 记录建立连接、等待响应头和读取响应体的耗时，未开启JFR记录时不计时
+        BackendCallEvent event = new BackendCallEvent();
+        long startNanos = 0L;
+        HttpClientContext context = null;
+        if (event.isEnabled()) {
+            event.begin();
+            startNanos = System.nanoTime();
+            context = HttpClientContext.create();
+        } else {
+            event = null;
+        }
+        try (CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(new BasicHttpClientConnectionManager(TIMED_SOCKET_FACTORIES))
+                .build()) {
             HttpPost httpPost = new HttpPost(url);
+            if (timeoutMs > 0) {
+                httpPost.setConfig(RequestConfig.custom().setSocketTimeout(timeoutMs).build());
+            }
             
             // 设置请求头
             if (headers != null && !headers.isEmpty()) {
@@ -104,12 +157,20 @@ public class HttpUtil {
             }
             
             // 执行请求
-            try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
+            try (CloseableHttpResponse response = httpClient.execute(httpPost, context)) {
+                if (event != null) {
+                    event.timeToHeaders = System.nanoTime() - startNanos;
+                }
+                
                 // 获取响应体
                 String responseBody = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
                 
                 // 检查响应状态
                 int statusCode = response.getStatusLine().getStatusCode();
+                if (event != null) {
+                    event.statusCode = statusCode;
+                    event.responseChars = responseBody.length();
+                }
                 if (statusCode >= 200 && statusCode < 300) {
                     return responseBody;
                 } else {
@@ -118,8 +179,24 @@ public class HttpUtil {
                 }
             }
         } catch (Exception e) {
+            if (event != null) {
+                event.error = e.getMessage();
+            }
             log.error("HTTP请求异常, URL: {}", url, e);
             throw new RuntimeException("HTTP请求异常: " + e.getMessage(), e);
+        } finally {
+            if (event != null) {
+                event.end();
+                if (event.shouldCommit()) {
+                    URI uri = URI.create(url);
+                    event.requestId = RequestIds.current();
+                    event.backend = uri.getScheme() + "://" + uri.getAuthority();
+                    event.path = uri.getPath();
+                    Object connectNanos = context.getAttribute(CONNECT_NANOS);
+                    event.connectTime = connectNanos != null ? (Long) connectNanos : 0L;
+                    event.commit();
+                }
+            }
         }
     }
 
@@ -226,4 +303,29 @@ public class HttpUtil {
         }
         return result;
     }
-}
\ No newline at end of file
+
+    /**
+     * 建立连接时把耗时写入请求上下文，供doPost提交BackendCallEvent
+     */
+    private static class TimedSocketFactory implements ConnectionSocketFactory {
+        private final ConnectionSocketFactory delegate;
+
+        TimedSocketFactory(ConnectionSocketFactory delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Socket createSocket(HttpContext context) throws IOException {
+            return delegate.createSocket(context);
+        }
+
+        @Override
+        public Socket connectSocket(int connectTimeout, Socket socket, HttpHost host, InetSocketAddress remoteAddress,
+                                    InetSocketAddress localAddress, HttpContext context) throws IOException {
+            long startNanos = System.nanoTime();
+            Socket connected = delegate.connectSocket(connectTimeout, socket, host, remoteAddress, localAddress, context);
+            context.setAttribute(CONNECT_NANOS, System.nanoTime() - startNanos);
+            return connected;
+        }
+    }
+}
@@ -1,15 +1,26 @@
 package com.xiao.utils;
 
 import com.alibaba.fastjson.JSON;
+import com.xiao.dto.OllamaChatRequestDTO;
+import com.xiao.dto.OllamaChatResponseDTO;
 import com.xiao.dto.OllamaRequestDTO;
+import com.xiao.dto.OllamaResponseDTO;
+import com.xiao.jfr.StreamTrace;
+import com.xiao.service.ModelWarmupService;
+import com.xiao.service.OllamaBackendRegistry;
+import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 /**
@@ -21,6 +32,12 @@ public class OllamaStreamUtil {
 
     private final WebClient webClient;
     
+    @Resource
+    private OllamaBackendRegistry backendRegistry;
+    
+    @Resource
+    private ModelWarmupService modelWarmupService;
+    
     public OllamaStreamUtil() {
         this.webClient = WebClient.builder().build();
     }
@@ -34,8 +51,29 @@ public class OllamaStreamUtil {
      * @param onMessage 每个响应片段的处理函数
      * @param onComplete 完成时的回调函数，带上下文参数
      * @param onError 错误处理函数
+     * @return 订阅句柄，dispose后会取消上游请求
      */
-    public void streamRequest(String model, String prompt, List<Integer> context,
+    public Disposable streamRequest(String model, String prompt, List<Integer> context,
+                             Consumer<String> onMessage, 
+                             Consumer<List<Integer>> onComplete, 
+                             Consumer<Throwable> onError) {
+        return streamRequest(model, prompt, context, null, onMessage, onComplete, onError);
+    }
+    
+    /**
+     * 发送流式请求到Ollama API（行级别输出），按停止规则提前结束
+     *
+     * @param model 模型名称
+     * @param prompt 提问内容
+     * @param context 上下文信息
+     * @param stopRules 停止规则匹配器，可为null；命中后取消上游请求并以null上下文回调完成
+     * @param onMessage 每个响应片段的处理函数
+     * @param onComplete 完成时的回调函数，带上下文参数
+     * @param onError 错误处理函数
+     * @return 订阅句柄，dispose后会取消上游请求
+     */
+    public Disposable streamRequest(String model, String prompt, List<Integer> context,
+                             StopRuleMatcher stopRules,
                              Consumer<String> onMessage, 
                              Consumer<List<Integer>> onComplete, 
                              Consumer<Throwable> onError) {
@@ -48,28 +86,14 @@ public class OllamaStreamUtil {
                 .build();
         
         // 发送请求并处理流式响应
-        webClient.post()
-                .uri("http://localhost:11434/api/generate")
-                .contentType(MediaType.APPLICATION_JSON)
-                .bodyValue(JSON.toJSONString(request))
-                .retrieve()
-                .bodyToFlux(String.class)
-                .flatMap(chunk -> {
-                    try {
-                        // 每个chunk是一个JSON字符串
-                        StreamResponse response = JSON.parseObject(chunk, StreamResponse.class);
-                        if (response != null) {
-                            if (response.getResponse() != null) {
-                                return Flux.just(response.getResponse());
-                            }
-                            // 如果是最后一个响应，保存上下文
-                            if (response.getDone() != null && response.getDone() && response.getContext() != null) {
-                                onComplete.accept(response.getContext());
-                                return Flux.empty();
-                            }
-                        }
-                    } catch (Exception e) {
-                        log.error("解析响应失败: {}", e.getMessage());
+        return generate(request, null, null, stopRules, null)
+                .flatMap(response -> {
+                    if (response.getResponse() != null) {
+                        return Flux.just(response.getResponse());
+                    }
+                    // 如果是最后一个响应，保存上下文
+                    if (response.getDone() != null && response.getDone() && response.getContext() != null) {
+                        onComplete.accept(response.getContext());
                     }
                     return Flux.empty();
                 })
@@ -93,8 +117,9 @@ public class OllamaStreamUtil {
      * @param onComplete 完成时的回调函数，带上下文参数
      * @param onError 错误处理函数
      * @param charDelayMs 字符间延迟（毫秒），设为0则不延迟
+     * @return 订阅句柄，dispose后会取消上游请求
      */
-    public void streamRequestCharByChar(String model, String prompt, List<Integer> context,
+    public Disposable streamRequestCharByChar(String model, String prompt, List<Integer> context,
                              Consumer<Character> onCharacter, 
                              Consumer<List<Integer>> onComplete, 
                              Consumer<Throwable> onError,
@@ -106,66 +131,464 @@ public class OllamaStreamUtil {
                 .context(context)  // 添加上下文
                 .stream(true)  // 启用流式响应
                 .build();
-        
-        // 保存最后一次响应的上下文
-        final List<Integer>[] lastContext = new List[1];
+        return streamRequestCharByChar(request, onCharacter, onComplete, onError, charDelayMs);
+    }
+    
+    /**
+     * 发送流式请求到Ollama API（字符级别输出），由调用方构建完整的请求对象
+     *
+     * @param request 请求对象，stream会被强制设为true
+     * @param onCharacter 每个字符的处理函数
+     * @param onComplete 完成时的回调函数，带上下文参数
+     * @param onError 错误处理函数
+     * @param charDelayMs 字符间延迟（毫秒），设为0则不延迟
+     * @return 订阅句柄，dispose后会取消上游请求
+     */
+    public Disposable streamRequestCharByChar(OllamaRequestDTO request,
+                             Consumer<Character> onCharacter, 
+                             Consumer<List<Integer>> onComplete, 
+                             Consumer<Throwable> onError,
+                             int charDelayMs) {
+        return streamRequestCharByChar(request, null, onCharacter, onComplete, onError, charDelayMs);
+    }
+    
+    /**
+     * 发送流式请求到Ollama API（字符级别输出），同时回调每个原始响应片段
+     *
+     * @param request 请求对象，stream会被强制设为true
+     * @param onChunk 每个响应片段文本的处理函数，在拆分为字符之前调用，可为null
+     * @param onCharacter 每个字符的处理函数
+     * @param onComplete 完成时的回调函数，带上下文参数
+     * @param onError 错误处理函数
+     * @param charDelayMs 字符间延迟（毫秒），设为0则不延迟
+     * @return 订阅句柄，dispose后会取消上游请求
+     */
+    public Disposable streamRequestCharByChar(OllamaRequestDTO request,
+                             Consumer<String> onChunk,
+                             Consumer<Character> onCharacter, 
+                             Consumer<List<Integer>> onComplete, 
+                             Consumer<Throwable> onError,
+                             int charDelayMs) {
+        return streamRequestCharByChar(request, null, onChunk, onCharacter, onComplete, onError, charDelayMs);
+    }
+    
+    /**
+     * 发送流式请求到Ollama API（字符级别输出），按停止规则提前结束
+     * 规则命中后立即取消上游请求，Ollama随之停止生成；此时没有完成片段，完成回调的上下文为null
+     *
+     * @param request 请求对象，stream会被强制设为true
+     * @param stopRules 停止规则匹配器，可为null，命中的规则通过stopRules.reason()获取
+     * @param onChunk 每个响应片段文本的处理函数，在拆分为字符之前调用，可为null
+     * @param onCharacter 每个字符的处理函数
+     * @param onComplete 完成时的回调函数，带上下文参数
+     * @param onError 错误处理函数
+     * @param charDelayMs 字符间延迟（毫秒），设为0则不延迟
+     * @return 订阅句柄，dispose后会取消上游请求
+     */
+    public Disposable streamRequestCharByChar(OllamaRequestDTO request,
+                             StopRuleMatcher stopRules,
+                             Consumer<String> onChunk,
+                             Consumer<Character> onCharacter, 
+                             Consumer<List<Integer>> onComplete, 
+                             Consumer<Throwable> onError,
+                             int charDelayMs) {
+        return streamRequestCharByChar(request, null, null, stopRules, onChunk, onCharacter,
+                done -> onComplete.accept(done.getContext()), onError, null, charDelayMs);
+    }
+    
+    /**
+     * 发送流式请求到Ollama API（字符级别输出），拆分推理块并按停止规则提前结束
+     * 推理内容不拆分为字符，只通过onReasoning按片段回调；停止规则只作用于回答部分
+     *
+     * @param request 请求对象，stream会被强制设为true
+     * @param splitter 推理块拆分器，为null时不拆分，推理内容与回答一起按字符输出
+     * @param onReasoning 推理内容片段的处理函数，为null时丢弃推理内容（拆分器仍会统计字符数）
+     * @param stopRules 停止规则匹配器，可为null，命中的规则通过stopRules.reason()获取
+     * @param onChunk 每个回答片段文本的处理函数，在拆分为字符之前调用，可为null
+     * @param onCharacter 每个字符的处理函数
+     * @param onDone 完成时的回调函数，参数为最后一个响应片段，其中包含上下文与token统计；
+     *               停止规则命中时上游没有完成片段，参数中只有上游已生成的片段数（eval_count）
+     * @param onError 错误处理函数
+     * @param upstreamTokens 上游片段计数器，在拆分推理块之前每收到一个非完成片段（即一个token，含推理内容）加1，
+     *                       调用方在取消、出错等没有完成片段的提前结束路径上以此计量，可为null
+     * @param charDelayMs 字符间延迟（毫秒），设为0则不延迟
+     * @return 订阅句柄，dispose后会取消上游请求
+     */
+    public Disposable streamRequestCharByChar(OllamaRequestDTO request,
+                             ThinkTagSplitter splitter,
+                             Consumer<String> onReasoning,
+                             StopRuleMatcher stopRules,
+                             Consumer<String> onChunk,
+                             Consumer<Character> onCharacter, 
+                             Consumer<OllamaResponseDTO> onDone, 
+                             Consumer<Throwable> onError,
+                             AtomicLong upstreamTokens,
+                             int charDelayMs) {
+        // 保存完成片段，并统计上游已生成的片段数（每个片段对应一个token）
+        final StreamResponse[] doneResponse = new StreamResponse[1];
+        AtomicLong received = upstreamTokens != null ? upstreamTokens : new AtomicLong();
         
         // 发送请求并处理流式响应
-        webClient.post()
-                .uri("http://localhost:11434/api/generate")
+        return generate(request, splitter, onReasoning, stopRules, received)
+                .flatMap(response -> {
+                    if (Boolean.TRUE.equals(response.getDone())) {
+                        doneResponse[0] = response;
+                    }
+                    
+                    if (response.getResponse() != null) {
+                        String text = response.getResponse();
+                        if (onChunk != null) {
+                            onChunk.accept(text);
+                        }
+                        
+                        // 将文本拆分为字符数组
+                        Character[] chars = new Character[text.length()];
+                        for (int i = 0; i < text.length(); i++) {
+                            chars[i] = text.charAt(i);
+                        }
+                        
+                        if (charDelayMs > 0) {
+                            // 有延迟的字符流
+                            return Flux.fromArray(chars)
+                                    .delayElements(Duration.ofMillis(charDelayMs));
+                        } else {
+                            // 无延迟的字符流
+                            return Flux.fromArray(chars);
+                        }
+                    }
+                    return Flux.empty();
+                })
+                .subscribe(
+                        onCharacter,     // 每个字符都会调用
+                        onError,         // 发生错误时调用
+                        () -> {
+                            // 完成时调用，提前结束时以收到的片段数作为输出token数
+                            if (doneResponse[0] != null) {
+                                onDone.accept(doneResponse[0].toResponseDTO());
+                                return;
+                            }
+                            OllamaResponseDTO partial = new OllamaResponseDTO();
+                            partial.setModel(request.getModel());
+                            partial.setDone(false);
+                            partial.setEval_count((double) received.get());
+                            onDone.accept(partial);
+                        }
+                );
+    }
+    
+    /**
+     * 发送生成请求并解析响应片段，先拆分推理块，再按停止规则改写回答文本
+     * 规则命中后发出截止到命中位置的文本并结束，结束时取消上游请求。
+     * 不拆分推理块（inline）时推理块仍随回答输出，但不参与停止规则匹配
+     *
+     * @param upstreamTokens 在拆分之前统计上游的非完成片段数，可为null
+     */
+    private Flux<StreamResponse> generate(OllamaRequestDTO request, ThinkTagSplitter splitter,
+                                          Consumer<String> onReasoning, StopRuleMatcher stopRules,
+                                          AtomicLong upstreamTokens) {
+        request.setStream(true);
+        String model = request.getModel();
+        SplitSink splitSink = splitter != null ? new SplitSink(onReasoning) : null;
+        // inline方式下另用一个拆分器识别推理块，只让回答部分经过停止规则
+        ThinkTagSplitter inlineSplitter = splitter == null && stopRules != null ? new ThinkTagSplitter(false) : null;
+        InlineRuleSink inlineSink = inlineSplitter != null ? new InlineRuleSink(stopRules) : null;
+        String backend = backendRegistry.pick();
+        StreamTrace trace = StreamTrace.of(model, backend, "/api/generate");
+        
+        Flux<String> chunks = trace.wrap(webClient.post()
+                .uri(backend + "/api/generate")
                 .contentType(MediaType.APPLICATION_JSON)
                 .bodyValue(JSON.toJSONString(request))
                 .retrieve()
-                .bodyToFlux(String.class)
-                .flatMap(chunk -> {
-                    try {
-                        // 每个chunk是一个JSON字符串
-                        StreamResponse response = JSON.parseObject(chunk, StreamResponse.class);
-                        if (response != null) {
-                            // 保存上下文
-                            if (response.getContext() != null) {
-                                lastContext[0] = response.getContext();
+                .bodyToFlux(String.class));
+        if (stopRules != null && stopRules.maxWallTimeMs() > 0) {
+            // 超过最长生成时间时结束，即使上游一直没有输出
+            chunks = chunks.takeUntilOther(Mono.delay(Duration.ofMillis(stopRules.maxWallTimeMs()))
+                    .doOnNext(tick -> {
+                        stopRules.markWallTime();
+                        trace.stopped();
+                    }));
+        }
+        return chunks.handle((chunk, sink) -> {
+            StreamResponse response;
+            try {
+                // 每个chunk是一个JSON字符串
+                response = JSON.parseObject(chunk, StreamResponse.class);
+            } catch (Exception e) {
+                log.error("解析响应失败: {}", e.getMessage());
+                return;
+            }
+            if (response == null) {
+                return;
+            }
+            
+            // 最后一个响应携带load_duration
+            boolean done = Boolean.TRUE.equals(response.getDone());
+            if (!done && upstreamTokens != null) {
+                upstreamTokens.incrementAndGet();
+            }
+            if (done) {
+                modelWarmupService.recordLoadDuration(model, response.getLoad_duration());
+                trace.done(response.getLoad_duration(), response.getPrompt_eval_duration(),
+                        response.getPrompt_eval_count(), response.getEval_duration(), response.getEval_count());
+            }
+            
+            if (splitter != null && (response.getResponse() != null || done)) {
+                if (response.getResponse() != null) {
+                    splitter.split(response.getResponse(), splitSink);
+                }
+                if (done) {
+                    splitter.flush(splitSink);
+                }
+                String answer = splitSink.take();
+                response.setResponse(answer.isEmpty() && !done ? null : answer);
+            }
+            
+            if (stopRules == null) {
+                sink.next(response);
+                return;
+            }
+            String text = response.getResponse();
+            String kept;
+            if (inlineSplitter != null) {
+                if (text != null) {
+                    inlineSplitter.split(text, inlineSink);
+                }
+                if (done) {
+                    inlineSplitter.flush(inlineSink);
+                    inlineSink.flush(inlineSplitter.reasoningClosed());
+                }
+                kept = inlineSink.take();
+            } else {
+                kept = text != null ? stopRules.accept(text) : "";
+                if (done) {
+                    kept += stopRules.flush();
+                }
+            }
+            response.setResponse(text != null || !kept.isEmpty() ? kept : null);
+            sink.next(response);
+            if (stopRules.fired()) {
+                log.debug("停止规则命中: {}, 模型: {}", stopRules.reason(), model);
+                trace.stopped();
+                sink.complete();
+            }
+        });
+    }
+    
+    /**
+     * 发送流式请求到Ollama API（token级别输出）
+     * 每个响应片段即一个token，完成时回调最后一个响应片段，其中包含耗时与token统计
+     *
+     * @param request 请求对象，stream会被强制设为true
+     * @param onToken 每个token的处理函数
+     * @param onDone 完成时的回调函数，参数为最后一个响应片段，上游未返回完成片段时为null
+     * @param onError 错误处理函数
+     * @return 订阅句柄，dispose后会取消上游请求
+     */
+    public Disposable streamTokens(OllamaRequestDTO request,
+                                   Consumer<String> onToken,
+                                   Consumer<OllamaResponseDTO> onDone,
+                                   Consumer<Throwable> onError) {
+        request.setStream(true);
+        String model = request.getModel();
+        AtomicBoolean doneSeen = new AtomicBoolean();
+        String backend = backendRegistry.pick();
+        StreamTrace trace = StreamTrace.of(model, backend, "/api/generate");
+        
+        return trace.wrap(webClient.post()
+                .uri(backend + "/api/generate")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(JSON.toJSONString(request))
+                .retrieve()
+                .bodyToFlux(String.class))
+                .subscribe(
+                        chunk -> {
+                            StreamResponse response;
+                            try {
+                                response = JSON.parseObject(chunk, StreamResponse.class);
+                            } catch (Exception e) {
+                                log.error("解析响应失败: {}", e.getMessage());
+                                return;
+                            }
+                            if (response == null) {
+                                return;
                             }
-                            
-                            if (response.getResponse() != null) {
-                                String text = response.getResponse();
-                                
-                                // 将文本拆分为字符数组
-                                Character[] chars = new Character[text.length()];
-                                for (int i = 0; i < text.length(); i++) {
-                                    chars[i] = text.charAt(i);
-                                }
-                                
-                                if (charDelayMs > 0) {
-                                    // 有延迟的字符流
-                                    return Flux.fromArray(chars)
-                                            .delayElements(Duration.ofMillis(charDelayMs));
-                                } else {
-                                    // 无延迟的字符流
-                                    return Flux.fromArray(chars);
-                                }
+                            if (response.getResponse() != null && !response.getResponse().isEmpty()) {
+                                onToken.accept(response.getResponse());
                             }
-                            
-                            // 如果是最后一个响应，检查是否完成
-                            if (response.getDone() != null && response.getDone()) {
-                                return Flux.empty();
+                            if (Boolean.TRUE.equals(response.getDone()) && doneSeen.compareAndSet(false, true)) {
+                                modelWarmupService.recordLoadDuration(model, response.getLoad_duration());
+                                trace.done(response.getLoad_duration(), response.getPrompt_eval_duration(),
+                                        response.getPrompt_eval_count(), response.getEval_duration(), response.getEval_count());
+                                onDone.accept(response.toResponseDTO());
+                            }
+                        },
+                        onError,
+                        () -> {
+                            if (doneSeen.compareAndSet(false, true)) {
+                                onDone.accept(null);
                             }
                         }
-                    } catch (Exception e) {
-                        log.error("解析响应失败: {}", e.getMessage());
-                    }
-                    return Flux.empty();
-                })
+                );
+    }
+    
+    /**
+     * 发送流式对话请求到Ollama Chat API（token级别输出）
+     *
+     * @param request 对话请求对象，stream会被强制设为true
+     * @param backend 后端地址，同一会话应固定使用同一后端以复用提示缓存
+     * @param onToken 每个token的处理函数
+     * @param onDone 完成时的回调函数，参数为最后一个响应片段，上游未返回完成片段时为null
+     * @param onError 错误处理函数
+     * @return 订阅句柄，dispose后会取消上游请求
+     */
+    public Disposable streamChat(OllamaChatRequestDTO request, String backend,
+                                 Consumer<String> onToken,
+                                 Consumer<OllamaChatResponseDTO> onDone,
+                                 Consumer<Throwable> onError) {
+        request.setStream(true);
+        String model = request.getModel();
+        AtomicBoolean doneSeen = new AtomicBoolean();
+        StreamTrace trace = StreamTrace.of(model, backend, "/api/chat");
+        
+        return trace.wrap(webClient.post()
+                .uri(backend + "/api/chat")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(JSON.toJSONString(request))
+                .retrieve()
+                .bodyToFlux(String.class))
                 .subscribe(
-                        onCharacter,     // 每个字符都会调用
-                        onError,         // 发生错误时调用
+                        chunk -> {
+                            OllamaChatResponseDTO response;
+                            try {
+                                response = JSON.parseObject(chunk, OllamaChatResponseDTO.class);
+                            } catch (Exception e) {
+                                log.error("解析响应失败: {}", e.getMessage());
+                                return;
+                            }
+                            if (response == null) {
+                                return;
+                            }
+                            if (response.getMessage() != null && response.getMessage().getContent() != null
+                                    && !response.getMessage().getContent().isEmpty()) {
+                                onToken.accept(response.getMessage().getContent());
+                            }
+                            if (Boolean.TRUE.equals(response.getDone()) && doneSeen.compareAndSet(false, true)) {
+                                modelWarmupService.recordLoadDuration(model, response.getLoad_duration());
+                                trace.done(response.getLoad_duration(), response.getPrompt_eval_duration(),
+                                        response.getPrompt_eval_count(), response.getEval_duration(), response.getEval_count());
+                                onDone.accept(response);
+                            }
+                        },
+                        onError,
                         () -> {
-                            // 完成时调用，传递上下文
-                            onComplete.accept(lastContext[0]);
+                            if (doneSeen.compareAndSet(false, true)) {
+                                onDone.accept(null);
+                            }
                         }
                 );
     }
     
+    /**
+     * 收集一个响应片段的拆分结果，回答部分拼接后取出，推理部分直接回调
+     * 整个片段属于同一侧时不复制文本
+     */
+    private static class SplitSink implements ThinkTagSplitter.Sink {
+        private final Consumer<String> onReasoning;
+        private String answer = "";
+        
+        SplitSink(Consumer<String> onReasoning) {
+            this.onReasoning = onReasoning;
+        }
+        
+        @Override
+        public void answer(String text, int start, int end) {
+            String part = slice(text, start, end);
+            answer = answer.isEmpty() ? part : answer + part;
+        }
+        
+        @Override
+        public void reasoning(String text, int start, int end) {
+            if (onReasoning != null) {
+                onReasoning.accept(slice(text, start, end));
+            }
+        }
+        
+        String take() {
+            String result = answer;
+            answer = "";
+            return result;
+        }
+        
+        private static String slice(String text, int start, int end) {
+            return start == 0 && end == text.length() ? text : text.substring(start, end);
+        }
+    }
+    
+    /**
+     * inline方式下的停止规则处理：推理块连同标签原样输出，回答部分经过停止规则，
+     * 规则命中后丢弃其余文本
+     */
+    private static class InlineRuleSink implements ThinkTagSplitter.Sink {
+        private final StopRuleMatcher stopRules;
+        private final StringBuilder output = new StringBuilder();
+        private boolean opened;
+        private boolean closed;
+        
+        InlineRuleSink(StopRuleMatcher stopRules) {
+            this.stopRules = stopRules;
+        }
+        
+        @Override
+        public void answer(String text, int start, int end) {
+            if (stopRules.fired()) {
+                return;
+            }
+            closeTag();
+            output.append(stopRules.accept(text.substring(start, end)));
+        }
+        
+        @Override
+        public void reasoning(String text, int start, int end) {
+            if (stopRules.fired()) {
+                return;
+            }
+            if (!opened) {
+                output.append(ThinkTagSplitter.OPEN_TAG);
+                opened = true;
+            }
+            output.append(text, start, end);
+        }
+        
+        /**
+         * 上游结束时调用，输出停止规则暂缓的字符
+         *
+         * @param reasoningClosed 推理块是否已经结束，结束但之后没有回答时补上结束标签
+         */
+        void flush(boolean reasoningClosed) {
+            if (stopRules.fired()) {
+                return;
+            }
+            if (reasoningClosed) {
+                closeTag();
+            }
+            output.append(stopRules.flush());
+        }
+        
+        String take() {
+            String result = output.toString();
+            output.setLength(0);
+            return result;
+        }
+        
+        private void closeTag() {
+            if (opened && !closed) {
+                output.append(ThinkTagSplitter.CLOSE_TAG);
+                closed = true;
+            }
+        }
+    }
+    
     /**
      * 简化版的流式响应对象
      */
@@ -174,6 +597,29 @@ public class OllamaStreamUtil {
         private String model;
         private String response;
         private Boolean done;
+        private String done_reason;
         private List<Integer> context;
+        private Long total_duration;
+        private Long load_duration;
+        private Integer prompt_eval_count;
+        private Long prompt_eval_duration;
+        private Integer eval_count;
+        private Long eval_duration;
+        
+        private OllamaResponseDTO toResponseDTO() {
+            OllamaResponseDTO dto = new OllamaResponseDTO();
+            dto.setModel(model);
+            dto.setResponse(response);
+            dto.setDone(done);
+            dto.setDone_reason(done_reason);
+            dto.setContext(context);
+            dto.setTotal_duration(total_duration);
+            dto.setLoad_duration(load_duration);
+            dto.setPrompt_eval_count(prompt_eval_count);
+            dto.setPrompt_eval_duration(prompt_eval_duration);
+            dto.setEval_count(eval_count != null ? eval_count.doubleValue() : null);
+            dto.setEval_duration(eval_duration);
+            return dto;
+        }
     }
 } 
\ No newline at end of file
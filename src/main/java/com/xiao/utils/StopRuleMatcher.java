@@ -0,0 +1,341 @@
+package com.xiao.utils;
+
+import com.xiao.dto.StopRuleDTO;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * 提前停止规则匹配器
+ * 按响应片段增量检查停止规则，每个请求使用一个实例，不可复用。
+ * 可能是停止字符串开头的结尾部分会暂缓放行，等下一个片段到达后再判断，
+ * 保证停止字符串不会有一部分已经发给客户端；正则无法判断前缀，跨片段的匹配只能截止到已放行的位置。
+ * 正则来自客户端，且在Reactor Netty的I/O线程上执行，因此限制长度，并限制每个片段匹配时读取字符的次数，
+ * 超出时按regex_budget命中结束生成，避免灾难性回溯长时间占用I/O线程
+ */
+public class StopRuleMatcher {
+
+    public static final String REASON_STOP = "stop";
+    public static final String REASON_REGEX = "regex";
+    public static final String REASON_FIRST_LINE = "first_line";
+    public static final String REASON_JSON = "json";
+    public static final String REASON_MAX_CHARS = "max_chars";
+    public static final String REASON_MAX_WALL_TIME = "max_wall_time";
+    public static final String REASON_REGEX_BUDGET = "regex_budget";
+
+    /**
+     * 正则匹配时向前回看的字符数，跨越更长范围的匹配可能检测不到
+     */
+    static final int REGEX_LOOKBACK = 256;
+
+    /**
+     * 停止正则的最大长度
+     */
+    static final int MAX_REGEX_LENGTH = 256;
+
+    /**
+     * 每个片段匹配正则时最多读取字符的次数，正常的正则在回看范围内远达不到这个次数
+     */
+    static final int REGEX_STEP_BUDGET = 200_000;
+
+    private final List<String> stops;
+    private final Pattern regex;
+    private final boolean firstLine;
+    private final boolean json;
+    private final int maxChars;
+    private final long maxWallTimeMs;
+
+    // 已收到的输出
+    private final StringBuilder output = new StringBuilder();
+    // output中已放行的字符数
+    private int emitted;
+
+    // 第一行状态：是否已出现非空白字符
+    private boolean lineStarted;
+
+    // JSON状态：括号深度、是否在字符串内、上一个字符是否为转义符、是否已进入JSON
+    private int depth;
+    private boolean inString;
+    private boolean escaped;
+    private boolean jsonStarted;
+
+    private volatile String reason;
+
+    private StopRuleMatcher(StopRuleDTO rules) {
+        List<String> stops = new ArrayList<>();
+        if (rules.getStop() != null) {
+            for (String stop : rules.getStop()) {
+                if (stop != null && !stop.isEmpty()) {
+                    stops.add(stop);
+                }
+            }
+        }
+        this.stops = stops;
+        if (rules.getRegex() != null && rules.getRegex().length() > MAX_REGEX_LENGTH) {
+            throw new IllegalArgumentException("停止正则过长，最多" + MAX_REGEX_LENGTH + "个字符");
+        }
+        try {
+            this.regex = rules.getRegex() != null && !rules.getRegex().isEmpty()
+                    ? Pattern.compile(rules.getRegex())
+                    : null;
+        } catch (PatternSyntaxException e) {
+            throw new IllegalArgumentException("停止正则无效: " + e.getDescription());
+        }
+        this.firstLine = Boolean.TRUE.equals(rules.getFirstLine());
+        this.json = Boolean.TRUE.equals(rules.getJson());
+        this.maxChars = rules.getMaxChars() != null ? rules.getMaxChars() : 0;
+        this.maxWallTimeMs = rules.getMaxWallTimeMs() != null ? rules.getMaxWallTimeMs() : 0;
+        if (maxChars < 0 || maxWallTimeMs < 0) {
+            throw new IllegalArgumentException("maxChars和maxWallTimeMs不能为负数");
+        }
+    }
+
+    /**
+     * 根据规则创建匹配器
+     *
+     * @param rules 停止规则，可为null
+     * @return 匹配器，没有设置任何规则时返回null
+     * @throws IllegalArgumentException 正则无效或过长，或数值为负数
+     */
+    public static StopRuleMatcher of(StopRuleDTO rules) {
+        if (rules == null) {
+            return null;
+        }
+        StopRuleMatcher matcher = new StopRuleMatcher(rules);
+        if (matcher.stops.isEmpty() && matcher.regex == null && !matcher.firstLine && !matcher.json
+                && matcher.maxChars == 0 && matcher.maxWallTimeMs == 0) {
+            return null;
+        }
+        return matcher;
+    }
+
+    /**
+     * 接收一个响应片段
+     *
+     * @param text 片段文本
+     * @return 本次可以放行的文本，可能为空；规则命中后返回截止到命中位置的剩余文本，之后始终返回空串
+     */
+    public String accept(String text) {
+        if (reason != null) {
+            return "";
+        }
+        int from = output.length();
+        output.append(text);
+        int end = output.length();
+
+        int cut = -1;
+        String hit = null;
+        for (String stop : stops) {
+            int index = output.indexOf(stop, Math.max(emitted, from - stop.length() + 1));
+            if (index >= 0 && (cut < 0 || index < cut)) {
+                cut = index;
+                hit = REASON_STOP;
+            }
+        }
+        if (regex != null) {
+            Matcher m = regex.matcher(new BudgetedSequence(output, REGEX_STEP_BUDGET));
+            m.useTransparentBounds(true);
+            m.region(Math.max(0, from - REGEX_LOOKBACK), end);
+            boolean found;
+            try {
+                found = m.find();
+            } catch (BudgetExceededException e) {
+                // 无法判断是否命中，截止到已放行的位置
+                reason = REASON_REGEX_BUDGET;
+                return "";
+            }
+            if (found) {
+                int index = Math.max(m.start(), emitted);
+                if (cut < 0 || index < cut) {
+                    cut = index;
+                    hit = REASON_REGEX;
+                }
+            }
+        }
+        if (firstLine || json) {
+            int limit = cut >= 0 ? cut : end;
+            for (int i = from; i < limit; i++) {
+                char c = output.charAt(i);
+                if (firstLine && scanLine(c)) {
+                    cut = i;
+                    hit = REASON_FIRST_LINE;
+                    break;
+                }
+                if (json && scanJson(c)) {
+                    cut = i + 1;
+                    hit = REASON_JSON;
+                    break;
+                }
+            }
+        }
+        if (maxChars > 0 && end >= maxChars && (cut < 0 || maxChars < cut)) {
+            cut = maxChars;
+            hit = REASON_MAX_CHARS;
+        }
+
+        if (cut >= 0) {
+            reason = hit;
+            return release(Math.max(cut, emitted));
+        }
+        return release(end - pendingStopPrefix());
+    }
+
+    /**
+     * 上游正常结束时调用，放行暂缓的结尾部分
+     *
+     * @return 暂缓的文本，规则已命中时返回空串
+     */
+    public String flush() {
+        if (reason != null) {
+            return "";
+        }
+        return release(output.length());
+    }
+
+    /**
+     * 超过最长生成时间时由计时器调用，其他规则已命中时忽略
+     */
+    public void markWallTime() {
+        if (reason == null) {
+            reason = REASON_MAX_WALL_TIME;
+        }
+    }
+
+    /**
+     * 命中的规则，未命中时为null
+     */
+    public String reason() {
+        return reason;
+    }
+
+    /**
+     * 是否已有规则命中
+     */
+    public boolean fired() {
+        return reason != null;
+    }
+
+    /**
+     * 最长生成时间（毫秒），0表示不限制
+     */
+    public long maxWallTimeMs() {
+        return maxWallTimeMs;
+    }
+
+    private String release(int to) {
+        String text = output.substring(emitted, to);
+        emitted = to;
+        return text;
+    }
+
+    /**
+     * 未放行部分中，可能是某个停止字符串开头的最长结尾长度
+     */
+    private int pendingStopPrefix() {
+        int pending = output.length() - emitted;
+        int hold = 0;
+        for (String stop : stops) {
+            for (int k = Math.min(stop.length() - 1, pending); k > hold; k--) {
+                if (endsWith(stop, k)) {
+                    hold = k;
+                    break;
+                }
+            }
+        }
+        return hold;
+    }
+
+    private boolean endsWith(String stop, int length) {
+        int offset = output.length() - length;
+        for (int i = 0; i < length; i++) {
+            if (output.charAt(offset + i) != stop.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return 当前字符是否为第一行的结束
+     */
+    private boolean scanLine(char c) {
+        if (c == '\n' || c == '\r') {
+            return lineStarted;
+        }
+        if (!Character.isWhitespace(c)) {
+            lineStarted = true;
+        }
+        return false;
+    }
+
+    /**
+     * @return 当前字符是否为第一个完整JSON的结尾括号
+     */
+    private boolean scanJson(char c) {
+        if (inString) {
+            if (escaped) {
+                escaped = false;
+            } else if (c == '\\') {
+                escaped = true;
+            } else if (c == '"') {
+                inString = false;
+            }
+            return false;
+        }
+        if (c == '{' || c == '[') {
+            depth++;
+            jsonStarted = true;
+        } else if (jsonStarted && (c == '}' || c == ']')) {
+            depth--;
+            return depth == 0;
+        } else if (jsonStarted && c == '"') {
+            inString = true;
+        }
+        return false;
+    }
+
+    /**
+     * 限制读取次数的字符序列，正则匹配通过它读取输出，超过次数时抛出BudgetExceededException
+     */
+    private static final class BudgetedSequence implements CharSequence {
+        private final CharSequence text;
+        private int remaining;
+
+        BudgetedSequence(CharSequence text, int budget) {
+            this.text = text;
+            this.remaining = budget;
+        }
+
+        @Override
+        public int length() {
+            return text.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (--remaining < 0) {
+                throw new BudgetExceededException();
+            }
+            return text.charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return text.subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return text.toString();
+        }
+    }
+
+    private static final class BudgetExceededException extends RuntimeException {
+        BudgetExceededException() {
+            super(null, null, false, false);
+        }
+    }
+}
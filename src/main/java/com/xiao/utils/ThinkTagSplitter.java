@@ -0,0 +1,163 @@
+package com.xiao.utils;
+
+/**
+ * 推理块拆分器
+ * deepseek-r1等推理模型先输出&lt;think&gt;...&lt;/think&gt;推理过程，再输出回答。
+ * 按响应片段增量识别标签，把文本区间分别交给回答或推理处理函数，
+ * 逐字符匹配只维护当前状态和已匹配的标签长度，不复制文本也不分配对象；
+ * 片段结尾可能是标签开头的字符先暂缓，下一个片段不能继续匹配时从标签常量中原样输出。
+ * 只识别第一个推理块，推理块结束后其余文本全部视为回答。每个请求使用一个实例
+ */
+public class ThinkTagSplitter {
+
+    public static final String OPEN_TAG = "<think>";
+    public static final String CLOSE_TAG = "</think>";
+
+    /**
+     * 推理内容输出方式：inline（与回答一起按字符输出，不拆分）、drop（丢弃）、
+     * event（通过reasoning事件按片段发送）、summary（丢弃，结束时只发送字符数）
+     */
+    public static final String MODE_INLINE = "inline";
+    public static final String MODE_DROP = "drop";
+    public static final String MODE_EVENT = "event";
+    public static final String MODE_SUMMARY = "summary";
+
+    /**
+     * 拆分结果的处理函数，区间为[start, end)
+     */
+    public interface Sink {
+        void answer(String text, int start, int end);
+
+        void reasoning(String text, int start, int end);
+    }
+
+    private final boolean trimAnswer;
+
+    // 0：推理块之前，1：推理块内，2：推理块已结束
+    private int state;
+    // 当前标签已匹配的字符数
+    private int matched;
+    // 推理块结束后是否仍在跳过回答开头的空白
+    private boolean skipping;
+
+    private int reasoningChars;
+
+    /**
+     * 根据推理内容输出方式创建拆分器
+     *
+     * @param mode 输出方式，为空时按inline处理
+     * @return 拆分器，inline方式不需要拆分，返回null
+     * @throws IllegalArgumentException 不支持的输出方式
+     */
+    public static ThinkTagSplitter forMode(String mode) {
+        if (mode == null || mode.isEmpty() || MODE_INLINE.equals(mode)) {
+            return null;
+        }
+        if (!MODE_DROP.equals(mode) && !MODE_EVENT.equals(mode) && !MODE_SUMMARY.equals(mode)) {
+            throw new IllegalArgumentException("不支持的推理输出方式: " + mode);
+        }
+        return new ThinkTagSplitter(true);
+    }
+
+    /**
+     * @param trimAnswer 推理块结束后是否跳过回答开头的空白，推理过程不随回答一起显示时使用
+     */
+    public ThinkTagSplitter(boolean trimAnswer) {
+        this.trimAnswer = trimAnswer;
+    }
+
+    /**
+     * 拆分一个响应片段
+     *
+     * @param text 片段文本
+     * @param sink 处理函数，同一片段可能被调用多次
+     */
+    public void split(String text, Sink sink) {
+        int length = text.length();
+        int runStart = 0;
+        if (state == 2) {
+            emit(sink, text, skipWhitespace(text, runStart), length);
+            return;
+        }
+        for (int i = 0; i < length && state != 2; i++) {
+            char c = text.charAt(i);
+            String tag = state == 0 ? OPEN_TAG : CLOSE_TAG;
+            if (matched > 0 && c != tag.charAt(matched)) {
+                // 暂缓的字符不是标签，按原样输出
+                emit(sink, tag, 0, matched);
+                matched = 0;
+                runStart = i;
+            }
+            if (c == tag.charAt(matched)) {
+                if (matched == 0) {
+                    emit(sink, text, runStart, i);
+                }
+                matched++;
+                runStart = i + 1;
+                if (matched == tag.length()) {
+                    matched = 0;
+                    state++;
+                    skipping = state == 2 && trimAnswer;
+                }
+            }
+        }
+        if (state == 2) {
+            runStart = skipWhitespace(text, runStart);
+        }
+        emit(sink, text, runStart, length);
+    }
+
+    /**
+     * 上游结束时调用，输出暂缓的字符
+     */
+    public void flush(Sink sink) {
+        if (matched > 0) {
+            emit(sink, state == 0 ? OPEN_TAG : CLOSE_TAG, 0, matched);
+            matched = 0;
+        }
+    }
+
+    /**
+     * 是否处于推理块内
+     */
+    public boolean inReasoning() {
+        return state == 1;
+    }
+
+    /**
+     * 推理块是否已经结束
+     */
+    public boolean reasoningClosed() {
+        return state == 2;
+    }
+
+    /**
+     * 推理内容的字符数，不含标签
+     */
+    public int reasoningChars() {
+        return reasoningChars;
+    }
+
+    private int skipWhitespace(String text, int from) {
+        if (!skipping) {
+            return from;
+        }
+        while (from < text.length() && Character.isWhitespace(text.charAt(from))) {
+            from++;
+        }
+        skipping = from == text.length();
+        return from;
+    }
+
+    private void emit(Sink sink, String text, int start, int end) {
+        if (start >= end) {
+            return;
+        }
+        if (state == 1) {
+            reasoningChars += end - start;
+            sink.reasoning(text, start, end);
+        } else {
+            sink.answer(text, start, end);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.xiao.utils;
+
+import com.xiao.domain.TokenUsage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 内存中的token用量计数器
+ * 每个(用户, 模型, 日期)一组LongAdder，请求线程只做累加，不加锁。
+ * 计数器只增不减，汇总时取累计值与上次汇总值之差作为增量，
+ * 汇总期间并发写入的部分留到下一次汇总，不会丢失也不会重复
+ */
+public class TokenUsageCounters {
+
+    private record Key(String user, String model, LocalDate day) {
+    }
+
+    private static class Counter {
+        private final Key key;
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder promptTokens = new LongAdder();
+        private final LongAdder completionTokens = new LongAdder();
+
+        // 已汇总的累计值，只由汇总线程写入
+        private volatile long drainedRequests;
+        private volatile long drainedPromptTokens;
+        private volatile long drainedCompletionTokens;
+
+        private Counter(Key key) {
+            this.key = key;
+        }
+    }
+
+    private final Map<Key, Counter> counters = new ConcurrentHashMap<>();
+
+    // 已移出counters的往日计数器，在途请求可能仍在写入，再汇总一次后丢弃
+    private List<Counter> retired = new ArrayList<>();
+
+    /**
+     * 累加一次请求的用量
+     */
+    public void add(String user, String model, LocalDate day, long promptTokens, long completionTokens) {
+        Counter counter = counters.computeIfAbsent(new Key(user, model, day), Counter::new);
+        counter.requests.increment();
+        if (promptTokens > 0) {
+            counter.promptTokens.add(promptTokens);
+        }
+        if (completionTokens > 0) {
+            counter.completionTokens.add(completionTokens);
+        }
+    }
+
+    /**
+     * 取出自上次汇总以来的增量，调用后这些增量不再返回
+     * 早于today的计数器在本次汇总后移除，不会再有新的写入
+     *
+     * @return 每个有增量的(用户, 模型, 日期)一行
+     */
+    public synchronized List<TokenUsage> drain(LocalDate today) {
+        List<TokenUsage> rows = new ArrayList<>();
+        for (Counter counter : retired) {
+            drain(counter, rows);
+        }
+        retired = new ArrayList<>();
+        Iterator<Counter> it = counters.values().iterator();
+        while (it.hasNext()) {
+            Counter counter = it.next();
+            drain(counter, rows);
+            if (counter.key.day().isBefore(today)) {
+                it.remove();
+                retired.add(counter);
+            }
+        }
+        return rows;
+    }
+
+    private void drain(Counter counter, List<TokenUsage> rows) {
+        long requests = counter.requests.sum();
+        long promptTokens = counter.promptTokens.sum();
+        long completionTokens = counter.completionTokens.sum();
+        TokenUsage row = row(counter.key, requests - counter.drainedRequests,
+                promptTokens - counter.drainedPromptTokens, completionTokens - counter.drainedCompletionTokens);
+        if (row.getRequests() == 0 && row.getPromptTokens() == 0 && row.getCompletionTokens() == 0) {
+            return;
+        }
+        counter.drainedRequests = requests;
+        counter.drainedPromptTokens = promptTokens;
+        counter.drainedCompletionTokens = completionTokens;
+        rows.add(row);
+    }
+
+    /**
+     * 用户自from起尚未汇总的用量，按模型合并
+     *
+     * @param model 模型，为null时返回全部模型
+     */
+    public Map<String, TokenUsage> undrained(String user, String model, LocalDate from) {
+        Map<String, TokenUsage> result = new LinkedHashMap<>();
+        for (Counter counter : counters.values()) {
+            Key key = counter.key;
+            if (!key.user().equals(user) || key.day().isBefore(from)
+                    || (model != null && !key.model().equals(model))) {
+                continue;
+            }
+            merge(result, row(key, counter.requests.sum() - counter.drainedRequests,
+                    counter.promptTokens.sum() - counter.drainedPromptTokens,
+                    counter.completionTokens.sum() - counter.drainedCompletionTokens));
+        }
+        return result;
+    }
+
+    /**
+     * 当前的计数器数量
+     */
+    public int size() {
+        return counters.size();
+    }
+
+    /**
+     * 把row按模型累加到result中
+     */
+    public static void merge(Map<String, TokenUsage> result, TokenUsage row) {
+        TokenUsage sum = result.get(row.getModel());
+        if (sum == null) {
+            sum = row(new Key(row.getUserId(), row.getModel(), null), 0, 0, 0);
+            result.put(row.getModel(), sum);
+        }
+        sum.setRequests(sum.getRequests() + value(row.getRequests()));
+        sum.setPromptTokens(sum.getPromptTokens() + value(row.getPromptTokens()));
+        sum.setCompletionTokens(sum.getCompletionTokens() + value(row.getCompletionTokens()));
+    }
+
+    private static long value(Long value) {
+        return value != null ? value : 0L;
+    }
+
+    private static TokenUsage row(Key key, long requests, long promptTokens, long completionTokens) {
+        TokenUsage row = new TokenUsage();
+        row.setUserId(key.user());
+        row.setModel(key.model());
+        row.setUsageDate(key.day());
+        row.setRequests(requests);
+        row.setPromptTokens(promptTokens);
+        row.setCompletionTokens(completionTokens);
+        return row;
+    }
+}
@@ -0,0 +1,20 @@
+-- token用量按(用户, 模型, 日期)汇总，各节点定期把内存中的增量累加写入
+CREATE TABLE IF NOT EXISTS `token_usage` (
+  `user_id` VARCHAR(64) NOT NULL,
+  `model` VARCHAR(128) NOT NULL,
+  `usage_date` DATE NOT NULL,
+  `requests` BIGINT NOT NULL DEFAULT 0,
+  `prompt_tokens` BIGINT NOT NULL DEFAULT 0,
+  `completion_tokens` BIGINT NOT NULL DEFAULT 0,
+  PRIMARY KEY (`user_id`, `model`, `usage_date`),
+  KEY `idx_usage_date` (`usage_date`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- 已写入的批次，与用量在同一事务中登记，崩溃后重放批次文件时据此跳过已写入的批次
+CREATE TABLE IF NOT EXISTS `token_usage_batch` (
+  `batch_id` VARCHAR(64) NOT NULL,
+  `row_count` INT NOT NULL,
+  `created_at` DATETIME NOT NULL,
+  PRIMARY KEY (`batch_id`),
+  KEY `idx_created_at` (`created_at`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
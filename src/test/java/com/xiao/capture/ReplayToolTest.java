@@ -0,0 +1,140 @@
+package com.xiao.capture;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 流量回放工具测试
+ */
+public class ReplayToolTest {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * 采集文件使用短字段名，读取后应还原全部字段
+     */
+    @Test
+    public void testLoadCompressedCapture() throws Exception {
+        CaptureRecord record = new CaptureRecord();
+        record.setOffsetMs(1500);
+        record.setEndpoint("stream");
+        record.setModel("deepseek-r1:8b");
+        record.setPromptLength(42);
+        record.setStatus("ok");
+        record.setTtftMs(320);
+        record.setDurationMs(4100);
+        record.setOutputChars(256);
+
+        Path file = dir.resolve("capture.ndjson.gz");
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(file)), StandardCharsets.UTF_8))) {
+            String line = JSON.toJSONString(record);
+            assertTrue(line.contains("\"ttft\":320"));
+            assertFalse(line.contains("\"p\":"), "脱敏记录不应包含提示原文");
+            writer.write(line);
+            writer.newLine();
+        }
+
+        List<CaptureRecord> records = ReplayTool.load(file);
+        assertEquals(List.of(record), records);
+    }
+
+    @Test
+    public void testPercentile() {
+        long[] sorted = new long[100];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = i + 1;
+        }
+        assertEquals(50, ReplayTool.percentile(sorted, 50));
+        assertEquals(99, ReplayTool.percentile(sorted, 99));
+        assertEquals(100, ReplayTool.percentile(sorted, 100));
+        assertEquals(7, ReplayTool.percentile(new long[]{7}, 99));
+        assertEquals(0, ReplayTool.percentile(new long[0], 50));
+    }
+
+    /**
+     * 两次回放报告对比时给出变化百分比
+     */
+    @Test
+    public void testCompareReports() {
+        JSONObject baseline = JSON.parseObject("{\"throughput_rps\":10,\"error_rate\":0,\"ttft_ms\":{\"p50\":100,\"p90\":200,\"p99\":400}}");
+        JSONObject current = JSON.parseObject("{\"throughput_rps\":12,\"error_rate\":0,\"ttft_ms\":{\"p50\":100,\"p90\":150,\"p99\":200}}");
+
+        Map<String, Object> diff = ReplayTool.compare(baseline, current);
+
+        assertEquals(20.0, (Double) ((Map<?, ?>) diff.get("throughput_rps")).get("change_percent"), 1e-9);
+        assertNull(((Map<?, ?>) diff.get("error_rate")).get("change_percent"));
+        Map<?, ?> ttft = (Map<?, ?>) diff.get("ttft_ms");
+        assertEquals(-50.0, (Double) ((Map<?, ?>) ttft.get("p99")).get("change_percent"), 1e-9);
+    }
+
+    /**
+     * 响应头迟迟不到和流式响应中途停滞的请求都在时限到达时计为超时错误
+     */
+    @Test
+    public void testTimedOutRequestsCountedAsErrors() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/api/ollama/ask", exchange -> {
+            await(release);
+            exchange.close();
+        });
+        server.createContext("/api/ollama/stream", exchange -> {
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, 0);
+            exchange.getResponseBody().write("event:character\ndata:a\n\n".getBytes(StandardCharsets.UTF_8));
+            exchange.getResponseBody().flush();
+            await(release);
+            exchange.close();
+        });
+        server.start();
+        try {
+            ReplayTool tool = new ReplayTool("http://localhost:" + server.getAddress().getPort(), 1, Duration.ofMillis(500));
+            long start = System.nanoTime();
+            Map<String, Object> report = tool.replay(List.of(record("ask"), record("stream")));
+
+            assertTrue(System.nanoTime() - start < 5_000_000_000L, "超时的请求不应继续等待");
+            assertEquals(2L, report.get("errors"));
+            assertEquals(2L, report.get("timeouts"));
+        } finally {
+            release.countDown();
+            server.stop(0);
+        }
+    }
+
+    private static CaptureRecord record(String endpoint) {
+        CaptureRecord record = new CaptureRecord();
+        record.setEndpoint(endpoint);
+        record.setModel("m");
+        record.setPromptLength(4);
+        return record;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.xiao.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 一致性哈希环测试
+ */
+public class ConsistentHashRingTest {
+
+    private static final String A = "http://localhost:8080";
+    private static final String B = "http://localhost:8081";
+    private static final String C = "http://localhost:8082";
+    private static final String D = "http://localhost:8083";
+
+    private static final int KEYS = 30000;
+
+    /**
+     * 各节点分到的键数量接近平均值，且节点顺序不影响归属
+     */
+    @Test
+    public void testBalancedAndOrderIndependent() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of(A, B, C), 160);
+        ConsistentHashRing reversed = new ConsistentHashRing(List.of(C, B, A), 160);
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            String key = "conversation-" + i;
+            String owner = ring.owner(key);
+            assertEquals(owner, reversed.owner(key));
+            counts.merge(owner, 1, Integer::sum);
+        }
+        for (String node : ring.nodes()) {
+            int count = counts.getOrDefault(node, 0);
+            assertTrue(Math.abs(count - KEYS / 3) < KEYS / 3 * 0.2, node + ": " + count);
+        }
+    }
+
+    /**
+     * 节点加入时只有移到新节点的键改变归属，数量约为1/N
+     */
+    @Test
+    public void testJoinMovesOnlyToNewNode() {
+        ConsistentHashRing before = new ConsistentHashRing(List.of(A, B, C), 160);
+        ConsistentHashRing after = new ConsistentHashRing(List.of(A, B, C, D), 160);
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String key = "user-" + i;
+            String oldOwner = before.owner(key);
+            String newOwner = after.owner(key);
+            if (!oldOwner.equals(newOwner)) {
+                assertEquals(D, newOwner);
+                moved++;
+            }
+        }
+        assertTrue(Math.abs(moved - KEYS / 4) < KEYS / 4 * 0.25, "moved: " + moved);
+    }
+
+    /**
+     * 节点离开时只有它的键改变归属
+     */
+    @Test
+    public void testLeaveMovesOnlyOwnKeys() {
+        ConsistentHashRing before = new ConsistentHashRing(List.of(A, B, C), 160);
+        ConsistentHashRing after = new ConsistentHashRing(List.of(A, C), 160);
+        for (int i = 0; i < KEYS; i++) {
+            String key = "user-" + i;
+            String oldOwner = before.owner(key);
+            if (!B.equals(oldOwner)) {
+                assertEquals(oldOwner, after.owner(key));
+            }
+        }
+    }
+
+    @Test
+    public void testEmptyRing() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of(), 160);
+        assertTrue(ring.isEmpty());
+        assertNull(ring.owner("key"));
+    }
+}
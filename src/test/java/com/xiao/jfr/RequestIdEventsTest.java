@@ -0,0 +1,83 @@
+package com.xiao.jfr;
+
+import com.sun.net.httpserver.HttpServer;
+import com.xiao.utils.HttpUtil;
+import jdk.jfr.consumer.RecordingStream;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JFR生成链路事件测试：同一请求线程中产生的事件都带有该请求的ID
+ */
+public class RequestIdEventsTest {
+
+    private static final String GENERATION_REQUEST = "com.xiao.GenerationRequest";
+    private static final String OLLAMA_STREAM = "com.xiao.OllamaStream";
+    private static final String BACKEND_CALL = "com.xiao.BackendCall";
+
+    @Test
+    public void testEventsCarryRequestId() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/api/generate", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            byte[] body = "{\"done\":true}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        Map<String, String> requestIds = new ConcurrentHashMap<>();
+        CountDownLatch received = new CountDownLatch(3);
+        try (RecordingStream stream = new RecordingStream()) {
+            for (String name : new String[]{GENERATION_REQUEST, OLLAMA_STREAM, BACKEND_CALL}) {
+                stream.enable(name).withThreshold(Duration.ZERO);
+                stream.onEvent(name, event -> {
+                    requestIds.put(name, event.getString("requestId"));
+                    received.countDown();
+                });
+            }
+            stream.startAsync();
+
+            RequestIds.set("req-42");
+            try {
+                GenerationTrace trace = GenerationTrace.begin("stream", "deepseek-r1:8b");
+                StreamTrace.of("deepseek-r1:8b", "http://localhost:11434", "/api/generate")
+                        .wrap(Flux.just("{\"response\":\"a\"}", "{\"done\":true}"))
+                        .blockLast();
+                String url = "http://localhost:" + server.getAddress().getPort() + "/api/generate";
+                assertEquals("{\"done\":true}", new HttpUtil().doPost(url, null, "{}"));
+                trace.finish("ok");
+            } finally {
+                RequestIds.clear();
+                server.stop(0);
+            }
+
+            assertTrue(received.await(10, TimeUnit.SECONDS), "未收到全部JFR事件: " + requestIds.keySet());
+        }
+        assertEquals("req-42", requestIds.get(GENERATION_REQUEST));
+        assertEquals("req-42", requestIds.get(OLLAMA_STREAM));
+        assertEquals("req-42", requestIds.get(BACKEND_CALL));
+    }
+
+    /**
+     * 未开启记录时返回空操作的句柄，不包装片段流
+     */
+    @Test
+    public void testDisabledWithoutRecording() {
+        StreamTrace trace = StreamTrace.of("m", "http://localhost:11434", "/api/generate");
+        Flux<String> chunks = Flux.just("x");
+        assertSame(chunks, trace.wrap(chunks));
+        GenerationTrace.begin("ask", "m").finish("ok");
+    }
+}
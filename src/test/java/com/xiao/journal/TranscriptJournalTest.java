@@ -0,0 +1,112 @@
+package com.xiao.journal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 转录日志读写测试
+ */
+public class TranscriptJournalTest {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * 多线程并发写入，段写满后滚动，读回的记录应完整且每个请求内有序
+     */
+    @Test
+    public void testConcurrentAppendAndRoll() throws Exception {
+        int threads = 8;
+        int perThread = 500;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try (TranscriptJournal journal = new TranscriptJournal(dir, 64 * 1024, 3600000)) {
+            for (int t = 0; t < threads; t++) {
+                long requestId = t + 1;
+                executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < perThread; i++) {
+                        assertTrue(journal.append(JournalRecord.TYPE_TOKEN, requestId, "deepseek-r1:8b", "片段" + i));
+                    }
+                    return null;
+                });
+            }
+            start.countDown();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+            assertEquals((long) threads * perThread, journal.appendedCount());
+        }
+
+        assertTrue(JournalReader.segments(dir).size() > 1, "段写满后应滚动到新文件");
+
+        Map<Long, List<String>> payloads = new HashMap<>();
+        JournalReader.readAll(dir, record -> {
+            assertEquals(JournalRecord.TYPE_TOKEN, record.type());
+            assertEquals("deepseek-r1:8b", record.model());
+            payloads.computeIfAbsent(record.requestId(), k -> new ArrayList<>()).add(record.payload());
+        });
+        assertEquals(threads, payloads.size());
+        for (List<String> list : payloads.values()) {
+            assertEquals(perThread, list.size());
+            for (int i = 0; i < perThread; i++) {
+                assertEquals("片段" + i, list.get(i));
+            }
+        }
+    }
+
+    /**
+     * 超过段大小的记录被丢弃，不影响后续写入
+     */
+    @Test
+    public void testOversizedRecordDropped() throws Exception {
+        try (TranscriptJournal journal = new TranscriptJournal(dir, 1024, 3600000)) {
+            assertFalse(journal.append(JournalRecord.TYPE_REQUEST, 1, "m", "x".repeat(2048)));
+            assertTrue(journal.append(JournalRecord.TYPE_RESPONSE, 1, "m", "ok"));
+            assertEquals(1, journal.droppedCount());
+        }
+        List<JournalRecord> records = new ArrayList<>();
+        JournalReader.readAll(dir, records::add);
+        assertEquals(1, records.size());
+        assertEquals("ok", records.get(0).payload());
+    }
+
+    /**
+     * 已预留但未写完的记录（例如写入者在预留后崩溃）只有长度，读取时跳过，不影响其后已提交的记录
+     */
+    @Test
+    public void testUncommittedRecordSkipped() throws Exception {
+        try (TranscriptJournal journal = new TranscriptJournal(dir, 4096, 3600000)) {
+            assertTrue(journal.append(JournalRecord.TYPE_REQUEST, 1, "m", "first"));
+            assertTrue(journal.append(JournalRecord.TYPE_TOKEN, 2, "m", "lost"));
+            assertTrue(journal.append(JournalRecord.TYPE_RESPONSE, 3, "m", "third"));
+        }
+        Path segment = JournalReader.segments(dir).get(0);
+        int first = JournalSegment.recordLength(1, "first".length());
+        int second = JournalSegment.recordLength(1, "lost".length());
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            // 保留长度，清空其余内容及commit标记
+            channel.write(ByteBuffer.allocate(second - 4), JournalSegment.HEADER_SIZE + first + 4);
+        }
+
+        List<JournalRecord> records = new ArrayList<>();
+        JournalReader.readAll(dir, records::add);
+        assertEquals(2, records.size());
+        assertEquals("first", records.get(0).payload());
+        assertEquals("third", records.get(1).payload());
+    }
+}
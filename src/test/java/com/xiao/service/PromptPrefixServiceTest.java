@@ -0,0 +1,58 @@
+package com.xiao.service;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.sun.net.httpserver.HttpServer;
+import com.xiao.capture.OllamaStandIn;
+import com.xiao.dto.OllamaRequestDTO;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 系统提示前缀预热测试
+ */
+public class PromptPrefixServiceTest {
+
+    private static final String SYSTEM = "你是一个专业、严谨的中文助手。";
+
+    /**
+     * 预热请求会被实际处理，系统提示计入prompt_eval_count；只含系统提示的空提示请求只加载模型
+     */
+    @Test
+    public void testWarmupRequestEvaluated() throws Exception {
+        HttpServer server = new OllamaStandIn(1, 1).start(0);
+        try {
+            String url = "http://localhost:" + server.getAddress().getPort() + "/api/generate";
+
+            JSONObject warmed = post(url, PromptPrefixService.warmupRequest("m", SYSTEM, "10m"));
+            assertEquals("length", warmed.getString("done_reason"));
+            assertEquals(SYSTEM.length() + PromptPrefixService.WARMUP_PROMPT.length(), warmed.getIntValue("prompt_eval_count"));
+            assertEquals(1, warmed.getIntValue("eval_count"));
+
+            OllamaRequestDTO loadOnly = PromptPrefixService.warmupRequest("m", SYSTEM, "10m");
+            loadOnly.setPrompt("");
+            JSONObject loaded = post(url, loadOnly);
+            assertEquals("load", loaded.getString("done_reason"));
+            assertNull(loaded.get("prompt_eval_count"));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static JSONObject post(String url, OllamaRequestDTO request) throws Exception {
+        HttpResponse<String> response = HttpClient.newHttpClient().send(HttpRequest.newBuilder(URI.create(url))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(JSON.toJSONString(request), StandardCharsets.UTF_8))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        assertEquals(200, response.statusCode());
+        return JSON.parseObject(response.body());
+    }
+}
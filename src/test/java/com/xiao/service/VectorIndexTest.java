@@ -0,0 +1,66 @@
+package com.xiao.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 向量索引及本地哈希向量化测试
+ * 不依赖Ollama，使用HashingEmbeddingClient作为向量模型的替身
+ */
+public class VectorIndexTest {
+
+    private final HashingEmbeddingClient embeddingClient = new HashingEmbeddingClient(256);
+
+    private float[] embed(String text) {
+        return VectorIndex.normalize(embeddingClient.embed(text));
+    }
+
+    /**
+     * 换一种说法的问题应当命中，无关问题不应命中
+     */
+    @Test
+    public void testParaphraseHit() {
+        VectorIndex<String> index = new VectorIndex<>(16, 256);
+        index.add(embed("今天北京的天气怎么样？"), "晴");
+        index.add(embed("如何用Java读取文件"), "Files.readString");
+
+        VectorIndex.Match<String> match = index.nearest(embed("今天北京天气怎么样"), 0.8f);
+        assertNotNull(match);
+        assertEquals("晴", match.value());
+
+        assertNull(index.nearest(embed("推荐一部科幻电影"), 0.8f));
+    }
+
+    /**
+     * 容量满后淘汰最近未命中的条目，最近命中过的条目保留
+     */
+    @Test
+    public void testClockEviction() {
+        VectorIndex<String> index = new VectorIndex<>(2, 256);
+        float[] a = embed("第一个问题是什么");
+        float[] b = embed("another completely different question");
+        float[] c = embed("第三个完全不同的提示 xyz");
+        index.add(a, "a");
+        index.add(b, "b");
+
+        // 命中a，使其获得二次机会
+        assertEquals("a", index.nearest(a, 0.99f).value());
+        index.add(c, "c");
+
+        assertEquals(2, index.size());
+        assertNotNull(index.nearest(a, 0.99f));
+        assertNull(index.nearest(b, 0.99f));
+        assertEquals("c", index.nearest(c, 0.99f).value());
+    }
+
+    /**
+     * 维度不匹配的查询直接视为未命中
+     */
+    @Test
+    public void testDimensionMismatch() {
+        VectorIndex<String> index = new VectorIndex<>(4, 256);
+        index.add(embed("hello world"), "hi");
+        assertNull(index.nearest(new float[128], 0f));
+    }
+}
@@ -0,0 +1,59 @@
+package com.xiao.utils;
+
+import com.alibaba.fastjson.JSON;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 上下文紧凑编码测试
+ */
+public class ContextCodecTest {
+
+    /**
+     * 编码后再解码应得到相同的token序列，长度约为JSON数组的60%
+     */
+    @Test
+    public void testRoundTrip() {
+        Random random = new Random(42);
+        List<Integer> context = new ArrayList<>();
+        for (int i = 0; i < 4096; i++) {
+            context.add(random.nextInt(150000));
+        }
+
+        String encoded = ContextCodec.encode(context);
+        int[] decoded = ContextCodec.decode(encoded);
+
+        assertEquals(context, ContextCodec.asList(decoded));
+        double ratio = (double) encoded.length() / JSON.toJSONString(context).length();
+        assertTrue(ratio > 0.55 && ratio < 0.65, "紧凑编码应约为JSON的60%: " + ratio);
+    }
+
+    /**
+     * 空上下文和负数差值
+     */
+    @Test
+    public void testEdgeCases() {
+        assertNull(ContextCodec.encode(null));
+        assertNull(ContextCodec.decode(null));
+        assertArrayEquals(new int[0], ContextCodec.decode(ContextCodec.encode(List.of())));
+        List<Integer> context = List.of(100, 5, 0, Integer.MAX_VALUE, 7);
+        assertEquals(context, ContextCodec.asList(ContextCodec.decode(ContextCodec.encode(context))));
+    }
+
+    /**
+     * 被篡改的数据应校验失败
+     */
+    @Test
+    public void testChecksum() {
+        String encoded = ContextCodec.encode(List.of(1, 2, 3, 1000, 2000));
+        char[] chars = encoded.toCharArray();
+        chars[3] = chars[3] == 'A' ? 'B' : 'A';
+        assertThrows(IllegalArgumentException.class, () -> ContextCodec.decode(new String(chars)));
+        assertThrows(IllegalArgumentException.class, () -> ContextCodec.decode("!!not-base64!!"));
+    }
+}
@@ -0,0 +1,146 @@
+package com.xiao.utils;
+
+import com.xiao.dto.StopRuleDTO;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 提前停止规则匹配器测试
+ */
+public class StopRuleMatcherTest {
+
+    /**
+     * 依次输入片段，返回放行的全部文本
+     */
+    private static String feed(StopRuleMatcher matcher, String... chunks) {
+        StringBuilder out = new StringBuilder();
+        for (String chunk : chunks) {
+            out.append(matcher.accept(chunk));
+            if (matcher.fired()) {
+                return out.toString();
+            }
+        }
+        return out.append(matcher.flush()).toString();
+    }
+
+    /**
+     * 停止字符串跨片段出现时，前半部分不能提前放行
+     */
+    @Test
+    public void testStopAcrossChunks() {
+        StopRuleDTO rules = new StopRuleDTO();
+        rules.setStop(List.of("###"));
+        StopRuleMatcher matcher = StopRuleMatcher.of(rules);
+
+        assertEquals("答案", matcher.accept("答案#"));
+        assertEquals("", matcher.accept("#"));
+        assertEquals("", matcher.accept("#后续"));
+        assertEquals(StopRuleMatcher.REASON_STOP, matcher.reason());
+        assertEquals("", matcher.accept("更多"));
+    }
+
+    /**
+     * 暂缓的结尾不是停止字符串时，后续片段到达或结束时放行
+     */
+    @Test
+    public void testHeldBackReleased() {
+        StopRuleDTO rules = new StopRuleDTO();
+        rules.setStop(List.of("END"));
+        StopRuleMatcher matcher = StopRuleMatcher.of(rules);
+
+        assertEquals("abc E", feed(matcher, "abc E"));
+        assertNull(matcher.reason());
+
+        matcher = StopRuleMatcher.of(rules);
+        assertEquals("xEN yz", feed(matcher, "xEN", " yz"));
+    }
+
+    /**
+     * 正则跨片段匹配时，已放行的部分不会撤回
+     */
+    @Test
+    public void testRegex() {
+        StopRuleDTO rules = new StopRuleDTO();
+        rules.setRegex("\\d{3}");
+        StopRuleMatcher matcher = StopRuleMatcher.of(rules);
+
+        assertEquals("编号：1", feed(matcher, "编号：1", "23，其他"));
+        assertEquals(StopRuleMatcher.REASON_REGEX, matcher.reason());
+
+        matcher = StopRuleMatcher.of(rules);
+        assertEquals("编号：", feed(matcher, "编号：", "123，其他"));
+        assertEquals(StopRuleMatcher.REASON_REGEX, matcher.reason());
+    }
+
+    /**
+     * 开头的空行忽略，第一行结束时停止
+     */
+    @Test
+    public void testFirstLine() {
+        StopRuleDTO rules = new StopRuleDTO();
+        rules.setFirstLine(true);
+        StopRuleMatcher matcher = StopRuleMatcher.of(rules);
+
+        assertEquals("\n北京", feed(matcher, "\n北", "京\n第二行"));
+        assertEquals(StopRuleMatcher.REASON_FIRST_LINE, matcher.reason());
+    }
+
+    /**
+     * 字符串中的括号和转义引号不影响深度
+     */
+    @Test
+    public void testBalancedJson() {
+        StopRuleDTO rules = new StopRuleDTO();
+        rules.setJson(true);
+        StopRuleMatcher matcher = StopRuleMatcher.of(rules);
+
+        String out = feed(matcher, "结果：{\"a\": \"}\\\"", "\", \"b\": [1, {\"c\"", ": 2}]}", " 解释");
+        assertEquals("结果：{\"a\": \"}\\\"\", \"b\": [1, {\"c\": 2}]}", out);
+        assertEquals(StopRuleMatcher.REASON_JSON, matcher.reason());
+    }
+
+    /**
+     * 多条规则同时设置时，位置最靠前的生效
+     */
+    @Test
+    public void testEarliestRuleWins() {
+        StopRuleDTO rules = new StopRuleDTO();
+        rules.setStop(List.of("。"));
+        rules.setMaxChars(4);
+        StopRuleMatcher matcher = StopRuleMatcher.of(rules);
+
+        assertEquals("一二三四", feed(matcher, "一二", "三四五。"));
+        assertEquals(StopRuleMatcher.REASON_MAX_CHARS, matcher.reason());
+    }
+
+    @Test
+    public void testEmptyAndInvalidRules() {
+        assertNull(StopRuleMatcher.of(null));
+        assertNull(StopRuleMatcher.of(new StopRuleDTO()));
+
+        StopRuleDTO rules = new StopRuleDTO();
+        rules.setRegex("(");
+        assertThrows(IllegalArgumentException.class, () -> StopRuleMatcher.of(rules));
+    }
+
+    /**
+     * 灾难性回溯的正则在读取次数用完后按regex_budget停止，不会长时间占用线程；过长的正则直接拒绝
+     */
+    @Test
+    public void testRegexBudget() {
+        StopRuleDTO rules = new StopRuleDTO();
+        rules.setRegex("((a*)*)*b");
+        StopRuleMatcher matcher = StopRuleMatcher.of(rules);
+
+        long start = System.nanoTime();
+        assertEquals("", feed(matcher, "a".repeat(28) + "!"));
+        assertTrue(System.nanoTime() - start < 1_000_000_000L, "匹配应在读取次数用完后立即结束");
+        assertEquals(StopRuleMatcher.REASON_REGEX_BUDGET, matcher.reason());
+
+        rules.setRegex("a".repeat(StopRuleMatcher.MAX_REGEX_LENGTH + 1));
+        assertThrows(IllegalArgumentException.class, () -> StopRuleMatcher.of(rules));
+    }
+}
@@ -0,0 +1,82 @@
+package com.xiao.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 推理块拆分器测试
+ */
+public class ThinkTagSplitterTest {
+
+    private static class Collector implements ThinkTagSplitter.Sink {
+        private final StringBuilder answer = new StringBuilder();
+        private final StringBuilder reasoning = new StringBuilder();
+
+        @Override
+        public void answer(String text, int start, int end) {
+            answer.append(text, start, end);
+        }
+
+        @Override
+        public void reasoning(String text, int start, int end) {
+            reasoning.append(text, start, end);
+        }
+    }
+
+    private static Collector split(ThinkTagSplitter splitter, String... chunks) {
+        Collector collector = new Collector();
+        for (String chunk : chunks) {
+            splitter.split(chunk, collector);
+        }
+        splitter.flush(collector);
+        return collector;
+    }
+
+    /**
+     * 标签被拆到多个片段时也能识别，回答开头的空白被跳过
+     */
+    @Test
+    public void testTagsAcrossChunks() {
+        ThinkTagSplitter splitter = new ThinkTagSplitter(true);
+        Collector out = split(splitter, "<th", "ink>\n先想", "一想</", "thi", "nk>\n\n", "  答案是42");
+
+        assertEquals("\n先想一想", out.reasoning.toString());
+        assertEquals("答案是42", out.answer.toString());
+        assertEquals(5, splitter.reasoningChars());
+        assertTrue(splitter.reasoningClosed());
+    }
+
+    /**
+     * 不是标签的尖括号原样输出，推理块结束后不再识别标签
+     */
+    @Test
+    public void testNonTagBrackets() {
+        ThinkTagSplitter splitter = new ThinkTagSplitter(false);
+        Collector out = split(splitter, "<<thin", "g> a<", "think>x</thinkY</think> b <think>c");
+
+        assertEquals("x</thinkY", out.reasoning.toString());
+        assertEquals("<<thing> a b <think>c", out.answer.toString());
+    }
+
+    /**
+     * 没有推理块时全部是回答，结尾暂缓的字符在结束时输出
+     */
+    @Test
+    public void testNoReasoning() {
+        ThinkTagSplitter splitter = new ThinkTagSplitter(true);
+        Collector out = split(splitter, "a < b", " 且 <thi");
+
+        assertEquals("a < b 且 <thi", out.answer.toString());
+        assertEquals(0, splitter.reasoningChars());
+        assertFalse(splitter.reasoningClosed());
+    }
+
+    @Test
+    public void testForMode() {
+        assertNull(ThinkTagSplitter.forMode(null));
+        assertNull(ThinkTagSplitter.forMode(ThinkTagSplitter.MODE_INLINE));
+        assertNotNull(ThinkTagSplitter.forMode(ThinkTagSplitter.MODE_DROP));
+        assertThrows(IllegalArgumentException.class, () -> ThinkTagSplitter.forMode("hide"));
+    }
+}
@@ -0,0 +1,138 @@
+package com.xiao.utils;
+
+import com.xiao.domain.TokenUsage;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * token用量计数器测试
+ */
+public class TokenUsageCountersTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2026, 10, 19);
+
+    /**
+     * 每次汇总只返回上次汇总以来的增量，没有增量时不返回行
+     */
+    @Test
+    public void testDrainReturnsDeltas() {
+        TokenUsageCounters counters = new TokenUsageCounters();
+        counters.add("alice", "deepseek-r1:8b", TODAY, 10, 20);
+        counters.add("alice", "deepseek-r1:8b", TODAY, 5, 7);
+        counters.add("bob", "qwen2:7b", TODAY, 3, 4);
+
+        List<TokenUsage> first = counters.drain(TODAY);
+        assertEquals(2, first.size());
+        TokenUsage alice = first.stream().filter(r -> r.getUserId().equals("alice")).findFirst().orElseThrow();
+        assertEquals(2L, alice.getRequests());
+        assertEquals(15L, alice.getPromptTokens());
+        assertEquals(27L, alice.getCompletionTokens());
+        assertEquals(TODAY, alice.getUsageDate());
+
+        assertTrue(counters.drain(TODAY).isEmpty());
+
+        counters.add("alice", "deepseek-r1:8b", TODAY, 1, 2);
+        List<TokenUsage> second = counters.drain(TODAY);
+        assertEquals(1, second.size());
+        assertEquals(1L, second.get(0).getRequests());
+        assertEquals(2L, second.get(0).getCompletionTokens());
+    }
+
+    /**
+     * 往日计数器汇总后移除，移除后的迟到写入在下一次汇总中取出
+     */
+    @Test
+    public void testPastDaysRetired() {
+        TokenUsageCounters counters = new TokenUsageCounters();
+        LocalDate yesterday = TODAY.minusDays(1);
+        counters.add("alice", "m", yesterday, 1, 1);
+        counters.add("alice", "m", TODAY, 1, 1);
+
+        assertEquals(2, counters.drain(TODAY).size());
+        assertEquals(1, counters.size());
+
+        counters.add("alice", "m", yesterday, 2, 2);
+        List<TokenUsage> late = counters.drain(TODAY);
+        assertEquals(1, late.size());
+        assertEquals(yesterday, late.get(0).getUsageDate());
+        assertEquals(2L, late.get(0).getPromptTokens());
+    }
+
+    /**
+     * 未汇总的用量按模型合并，只包含指定用户和起始日期之后的部分
+     */
+    @Test
+    public void testUndrained() {
+        TokenUsageCounters counters = new TokenUsageCounters();
+        counters.add("alice", "a", TODAY, 10, 1);
+        counters.add("alice", "a", TODAY.minusDays(1), 10, 1);
+        counters.add("alice", "b", TODAY, 3, 3);
+        counters.add("bob", "a", TODAY, 100, 100);
+
+        Map<String, TokenUsage> all = counters.undrained("alice", null, TODAY.minusDays(1));
+        assertEquals(2, all.size());
+        assertEquals(2L, all.get("a").getRequests());
+        assertEquals(20L, all.get("a").getPromptTokens());
+
+        Map<String, TokenUsage> today = counters.undrained("alice", "a", TODAY);
+        assertEquals(1, today.size());
+        assertEquals(10L, today.get("a").getPromptTokens());
+
+        counters.drain(TODAY);
+        assertTrue(counters.undrained("alice", null, TODAY).values().stream()
+                .allMatch(r -> r.getRequests() == 0 && r.getPromptTokens() == 0));
+    }
+
+    /**
+     * 汇总与写入并发进行时，所有汇总行之和等于写入总量
+     */
+    @Test
+    public void testConcurrentAddAndDrain() throws InterruptedException {
+        TokenUsageCounters counters = new TokenUsageCounters();
+        int threads = 4;
+        int perThread = 50000;
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            String user = "user-" + (t % 2);
+            writers.add(new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    counters.add(user, "m", TODAY, 2, 3);
+                }
+            }));
+        }
+        AtomicBoolean running = new AtomicBoolean(true);
+        long[] totals = new long[3];
+        Thread drainer = new Thread(() -> {
+            while (running.get()) {
+                sum(counters.drain(TODAY), totals);
+            }
+        });
+        drainer.start();
+        writers.forEach(Thread::start);
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        running.set(false);
+        drainer.join();
+        sum(counters.drain(TODAY), totals);
+
+        assertEquals((long) threads * perThread, totals[0]);
+        assertEquals(2L * threads * perThread, totals[1]);
+        assertEquals(3L * threads * perThread, totals[2]);
+    }
+
+    private static void sum(List<TokenUsage> rows, long[] totals) {
+        for (TokenUsage row : rows) {
+            totals[0] += row.getRequests();
+            totals[1] += row.getPromptTokens();
+            totals[2] += row.getCompletionTokens();
+        }
+    }
+}